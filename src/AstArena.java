@@ -0,0 +1,498 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Płaskie AST (struct-of-arrays): każdy węzeł to indeks w równoległych tablicach int.
+ * kind - rodzaj węzła (Statement.* albo EXPRESSION + Expression.*), a..d - dzieci, listy,
+ * numery operatorów, numery symboli nazw (Symbols) lub indeksy stałych. Listy dzieci leżą
+ * w jednej tablicy lists jako [liczba, węzeł1, węzeł2, ...]. Literały i parametry są w puli
+ * stałych (bez duplikatów).
+ *
+ * Parser oddaje instrukcje najwyższego poziomu po jednej (parseNext), więc drzewo obiektów
+ * istnieje tylko dla bieżącej instrukcji - po zakodowaniu jest od razu zwalniane.
+ * Węzły superinstrukcji są zapisywane w swoim podstawowym kształcie.
+ */
+final class AstArena {
+    static final int NONE = -1;
+    // Rodzaje wyrażeń są przesunięte, żeby nie kolidowały z rodzajami instrukcji
+    static final int EXPRESSION = 16;
+    // Pole b deklaracji funkcji: typ zwracany (numer + 1, 0 = brak) w niskich bitach,
+    // znaczniki cached/pure i indeks stałej ze zbiorem wywoływanych funkcji powyżej
+    private static final int TYPE_MASK = 0xFF;
+    private static final int CACHED_FLAG = 1 << 8;
+    private static final int PURE_FLAG = 1 << 9;
+    private static final int CALLEES_SHIFT = 10;
+
+    private static final Lexer.TokenType[] TOKEN_TYPES = Lexer.TokenType.values();
+
+    private int[] kinds = new int[256];
+    private int[] as = new int[256];
+    private int[] bs = new int[256];
+    private int[] cs = new int[256];
+    private int[] ds = new int[256];
+    private int size;
+
+    private int[] lists = new int[256];
+    private int listSize;
+
+    private Object[] constants = new Object[64];
+    private int constantCount;
+    private Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int[] topLevel = new int[16];
+    private int topLevelCount;
+
+    // Węzły odtworzone jako obiekty (rzadkie konstrukcje i wywołania wbudowanych funkcji)
+    private final Map<Integer, ASTNode> decoded = new ConcurrentHashMap<>();
+
+    // ===== DOSTĘP =====
+    int kind(int node) { return kinds[node]; }
+    int a(int node) { return as[node]; }
+    int b(int node) { return bs[node]; }
+    int c(int node) { return cs[node]; }
+    int d(int node) { return ds[node]; }
+
+    Object constant(int index) { return constants[index]; }
+
+    // Literał liczbowy jest parsowany przy pierwszym użyciu i podmieniany w puli
+    void replaceConstant(int index, Object value) { constants[index] = value; }
+
+    int listSize(int list) { return lists[list]; }
+    int listItem(int list, int i) { return lists[list + 1 + i]; }
+
+    int topLevelCount() { return topLevelCount; }
+    int topLevel(int i) { return topLevel[i]; }
+
+    int nodeCount() { return size; }
+
+    // ===== DEKLARACJE FUNKCJI =====
+    int functionSymbol(int node) { return as[node]; }
+
+    String functionName(int node) { return Symbols.name(as[node]); }
+
+    Lexer.TokenType returnType(int node) { return tokenType((bs[node] & TYPE_MASK) - 1); }
+
+    boolean isCached(int node) { return (bs[node] & CACHED_FLAG) != 0; }
+
+    boolean isPure(int node) { return (bs[node] & PURE_FLAG) != 0; }
+
+    @SuppressWarnings("unchecked")
+    Set<String> callees(int node) { return (Set<String>) constants[bs[node] >>> CALLEES_SHIFT]; }
+
+    @SuppressWarnings("unchecked")
+    List<Parameter> parameters(int node) { return (List<Parameter>) constants[cs[node]]; }
+
+    int functionBody(int node) { return ds[node]; }
+
+    String importPath(int node) { return ((StringValue) constants[as[node]]).value; }
+
+    static Lexer.TokenType tokenType(int ordinal) {
+        return ordinal == NONE ? null : TOKEN_TYPES[ordinal];
+    }
+
+    // Pamięć zajmowana przez tablice areny (bez samych obiektów stałych)
+    long arrayBytes() {
+        return 5L * 4 * kinds.length + 4L * lists.length + 4L * constants.length + 4L * topLevel.length;
+    }
+
+    // ===== KODOWANIE =====
+    /**
+     * Buduje arenę z parsera: instrukcje najwyższego poziomu są kolejno parsowane, optymalizowane
+     * (jeden Optimizer, jak w trybie strumieniowym), oznaczane analizą czystości i kodowane
+     */
+    static AstArena build(Parser parser, Optimizer optimizer) {
+        AstArena arena = new AstArena();
+        Set<String> pure = new HashSet<>();
+        Statement statement;
+        while ((statement = parser.parseNext()) != null) {
+            List<Statement> chunk = new ArrayList<>(1);
+            chunk.add(statement);
+            Program program = optimizer.optimize(new Program(chunk));
+            PurityAnalysis.analyze(program, pure::contains);
+            for (Statement s : program.statements) {
+                if (s instanceof FunctionDeclaration f) {
+                    if (f.cached || f.pure) pure.add(f.name);
+                    else pure.remove(f.name);
+                }
+                arena.addTopLevel(s);
+            }
+        }
+        arena.trim();
+        return arena;
+    }
+
+    void addTopLevel(Statement statement) {
+        int node = statement(statement);
+        if (topLevelCount == topLevel.length) topLevel = Arrays.copyOf(topLevel, topLevelCount * 2);
+        topLevel[topLevelCount++] = node;
+    }
+
+    // Obcina zapas w tablicach po zakończeniu kodowania
+    void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        as = Arrays.copyOf(as, size);
+        bs = Arrays.copyOf(bs, size);
+        cs = Arrays.copyOf(cs, size);
+        ds = Arrays.copyOf(ds, size);
+        lists = Arrays.copyOf(lists, listSize);
+        constants = Arrays.copyOf(constants, constantCount);
+        topLevel = Arrays.copyOf(topLevel, topLevelCount);
+        constantIndex = new HashMap<>();
+    }
+
+    private int statement(Statement s) {
+        if (s == null) return NONE;
+        return switch (s.kind) {
+            case Statement.VARIABLE_DECLARATION -> {
+                VariableDeclaration d = (VariableDeclaration) s;
+                yield node(Statement.VARIABLE_DECLARATION, ordinal(d.type), d.symbol, expression(d.initializer), NONE);
+            }
+            case Statement.ASSIGNMENT, Statement.INCREMENT_LOCAL -> {
+                Assignment a = (Assignment) s;
+                yield node(Statement.ASSIGNMENT, a.symbol, expression(a.value), NONE, NONE);
+            }
+            case Statement.IF -> {
+                IfStatement i = (IfStatement) s;
+                yield node(Statement.IF, expression(i.condition), list(i.thenBranch), list(i.elseBranch), NONE);
+            }
+            case Statement.WHILE -> {
+                WhileStatement w = (WhileStatement) s;
+                yield node(Statement.WHILE, expression(w.condition), list(w.body), NONE, NONE);
+            }
+            case Statement.FOR -> {
+                ForStatement f = (ForStatement) s;
+                yield node(Statement.FOR, statement(f.initializer), expression(f.condition), statement(f.increment), list(f.body));
+            }
+            case Statement.PARALLEL_FOR -> {
+                ParallelForStatement p = (ParallelForStatement) s;
+                yield node(Statement.PARALLEL_FOR, constant(p.reductions), statement(p.loop), NONE, NONE);
+            }
+            case Statement.RETURN, Statement.RETURN_BINARY ->
+                    node(Statement.RETURN, expression(((ReturnStatement) s).value), NONE, NONE, NONE);
+            case Statement.EXPRESSION ->
+                    node(Statement.EXPRESSION, expression(((ExpressionStatement) s).expression), NONE, NONE, NONE);
+            case Statement.BLOCK -> node(Statement.BLOCK, list(((BlockStatement) s).statements), NONE, NONE, NONE);
+            case Statement.FUNCTION_DECLARATION -> {
+                FunctionDeclaration f = (FunctionDeclaration) s;
+                if (f.body == null) throw new IllegalStateException("Lazy function bodies cannot be stored in an arena");
+                int flags = (ordinal(f.returnType) + 1) | (f.cached ? CACHED_FLAG : 0) | (f.pure ? PURE_FLAG : 0)
+                        | constant(f.callees) << CALLEES_SHIFT;
+                yield node(Statement.FUNCTION_DECLARATION, f.symbol, flags, constant(f.parameters), list(f.body));
+            }
+            case Statement.IMPORT ->
+                    node(Statement.IMPORT, constant(new StringValue(((ImportStatement) s).path)), NONE, NONE, NONE);
+            default -> throw new IllegalStateException("Unknown statement kind: " + s.kind);
+        };
+    }
+
+    private int expression(Expression e) {
+        if (e == null) return NONE;
+        return switch (e.kind) {
+            case Expression.NUMBER_LITERAL ->
+                    node(EXPRESSION + Expression.NUMBER_LITERAL, constant(((NumberLiteral) e).value), NONE, NONE, NONE);
+            case Expression.STRING_LITERAL ->
+                    node(EXPRESSION + Expression.STRING_LITERAL, constant(new StringValue(((StringLiteral) e).value)), NONE, NONE, NONE);
+            case Expression.BOOLEAN_LITERAL ->
+                    node(EXPRESSION + Expression.BOOLEAN_LITERAL, ((BooleanLiteral) e).value ? 1 : 0, NONE, NONE, NONE);
+            case Expression.IDENTIFIER ->
+                    node(EXPRESSION + Expression.IDENTIFIER, ((Identifier) e).symbol, NONE, NONE, NONE);
+            case Expression.BINARY, Expression.COMPARE_LOCALS, Expression.COMPARE_LOCAL_CONSTANT -> {
+                BinaryOperation b = (BinaryOperation) e;
+                yield node(EXPRESSION + Expression.BINARY, expression(b.left), b.operator.ordinal(), expression(b.right), NONE);
+            }
+            case Expression.UNARY -> {
+                UnaryOperation u = (UnaryOperation) e;
+                yield node(EXPRESSION + Expression.UNARY, u.operator.ordinal(), expression(u.operand), NONE, NONE);
+            }
+            case Expression.CALL, Expression.CALL_LOCALS -> {
+                FunctionCall c = (FunctionCall) e;
+                yield node(EXPRESSION + Expression.CALL, c.symbol, list(c.arguments), NONE, NONE);
+            }
+            case Expression.SPAWN -> node(EXPRESSION + Expression.SPAWN, expression(((SpawnExpression) e).call), NONE, NONE, NONE);
+            case Expression.AWAIT -> node(EXPRESSION + Expression.AWAIT, expression(((AwaitExpression) e).task), NONE, NONE, NONE);
+            default -> throw new IllegalStateException("Unknown expression kind: " + e.kind);
+        };
+    }
+
+    private int list(List<? extends ASTNode> items) {
+        if (items == null) return NONE;
+        // Najpierw dzieci (same dopisują węzły i listy), potem ciągły wpis tej listy
+        int[] nodes = new int[items.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            ASTNode item = items.get(i);
+            nodes[i] = item instanceof Statement s ? statement(s) : expression((Expression) item);
+        }
+        if (listSize + nodes.length + 1 > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listSize + nodes.length + 1));
+        }
+        int start = listSize;
+        lists[listSize++] = nodes.length;
+        System.arraycopy(nodes, 0, lists, listSize, nodes.length);
+        listSize += nodes.length;
+        return start;
+    }
+
+    private int node(int kind, int a, int b, int c, int d) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            as = Arrays.copyOf(as, capacity);
+            bs = Arrays.copyOf(bs, capacity);
+            cs = Arrays.copyOf(cs, capacity);
+            ds = Arrays.copyOf(ds, capacity);
+        }
+        kinds[size] = kind;
+        as[size] = a;
+        bs[size] = b;
+        cs[size] = c;
+        ds[size] = d;
+        return size++;
+    }
+
+    private int constant(Object value) {
+        // Napisy łączą się z innymi napisami, listy parametrów i redukcji (bez equals) tylko same ze sobą
+        Object key = value instanceof StringValue s ? "\"" + s.value : value;
+        Integer index = constantIndex.get(key);
+        if (index != null) return index;
+        if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount] = value;
+        constantIndex.put(key, constantCount);
+        return constantCount++;
+    }
+
+    private static int ordinal(Lexer.TokenType type) {
+        return type == null ? NONE : type.ordinal();
+    }
+
+    // ===== DEKODOWANIE =====
+    // Odtwarza poddrzewo jako obiekty; wynik jest zapamiętywany, bo węzły są niemutowalne
+    Statement decodeStatement(int node) {
+        if (node == NONE) return null;
+        return (Statement) decoded.computeIfAbsent(node, this::buildStatement);
+    }
+
+    Expression decodeExpression(int node) {
+        if (node == NONE) return null;
+        return (Expression) decoded.computeIfAbsent(node, this::buildExpression);
+    }
+
+    private Statement buildStatement(int n) {
+        return switch (kinds[n]) {
+            case Statement.VARIABLE_DECLARATION ->
+                    new VariableDeclaration(tokenType(as[n]), Symbols.name(bs[n]), buildExpressionOrNull(cs[n]));
+            case Statement.ASSIGNMENT -> new Assignment(Symbols.name(as[n]), buildExpression(bs[n]));
+            case Statement.IF -> new IfStatement(buildExpression(as[n]), statements(bs[n]), statements(cs[n]));
+            case Statement.WHILE -> new WhileStatement(buildExpression(as[n]), statements(bs[n]));
+            case Statement.FOR -> new ForStatement(buildStatementOrNull(as[n]), buildExpressionOrNull(bs[n]),
+                    buildStatementOrNull(cs[n]), statements(ds[n]));
+            case Statement.PARALLEL_FOR -> {
+                @SuppressWarnings("unchecked")
+                List<Reduction> reductions = (List<Reduction>) constants[as[n]];
+                yield new ParallelForStatement(reductions, (ForStatement) buildStatement(bs[n]));
+            }
+            case Statement.RETURN -> new ReturnStatement(buildExpressionOrNull(as[n]));
+            case Statement.EXPRESSION -> new ExpressionStatement(buildExpression(as[n]));
+            case Statement.BLOCK -> new BlockStatement(statements(as[n]));
+            case Statement.FUNCTION_DECLARATION -> {
+                FunctionDeclaration f = new FunctionDeclaration(returnType(n), functionName(n), parameters(n),
+                        statements(ds[n]), isCached(n));
+                f.pure = isPure(n);
+                f.callees = callees(n);
+                yield f;
+            }
+            case Statement.IMPORT -> new ImportStatement(importPath(n));
+            default -> throw new IllegalStateException("Not a statement node: " + n);
+        };
+    }
+
+    private Expression buildExpression(int n) {
+        return switch (kinds[n] - EXPRESSION) {
+            case Expression.NUMBER_LITERAL -> new NumberLiteral(numberText(as[n]));
+            case Expression.STRING_LITERAL -> new StringLiteral(((StringValue) constants[as[n]]).value);
+            case Expression.BOOLEAN_LITERAL -> new BooleanLiteral(as[n] != 0);
+            case Expression.IDENTIFIER -> new Identifier(Symbols.name(as[n]), as[n]);
+            case Expression.BINARY -> new BinaryOperation(buildExpression(as[n]), tokenType(bs[n]), buildExpression(cs[n]));
+            case Expression.UNARY -> new UnaryOperation(tokenType(as[n]), buildExpression(bs[n]));
+            case Expression.CALL -> new FunctionCall(Symbols.name(as[n]), expressions(bs[n]));
+            case Expression.SPAWN -> new SpawnExpression((FunctionCall) buildExpression(as[n]));
+            case Expression.AWAIT -> new AwaitExpression(buildExpression(as[n]));
+            default -> throw new IllegalStateException("Not an expression node: " + n);
+        };
+    }
+
+    private Statement buildStatementOrNull(int node) {
+        return node == NONE ? null : buildStatement(node);
+    }
+
+    private Expression buildExpressionOrNull(int node) {
+        return node == NONE ? null : buildExpression(node);
+    }
+
+    // Literał mógł już zostać podmieniony na sparsowaną wartość
+    private String numberText(int constant) {
+        Object value = constants[constant];
+        return value instanceof String text ? text : value.toString();
+    }
+
+    // Ciało funkcji z areny jako obiekty (np. do ponownego zakodowania przy zapisie sesji)
+    List<Statement> decodeStatements(int list) {
+        return statements(list);
+    }
+
+    private List<Statement> statements(int list) {
+        if (list == NONE) return null;
+        int count = lists[list];
+        List<Statement> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(buildStatement(lists[list + 1 + i]));
+        return out;
+    }
+
+    private List<Expression> expressions(int list) {
+        int count = lists[list];
+        List<Expression> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(buildExpression(lists[list + 1 + i]));
+        return out;
+    }
+
+    // Cały program jako drzewo obiektów (np. dla --dump-ast)
+    Program toProgram() {
+        List<Statement> statements = new ArrayList<>(topLevelCount);
+        for (int i = 0; i < topLevelCount; i++) statements.add(buildStatement(topLevel[i]));
+        return new Program(statements);
+    }
+
+    // ===== ZAPIS BINARNY (sesje REPL) =====
+    // Znaczniki rodzajów stałych w puli
+    private static final int CONSTANT_NULL = 0;
+    private static final int CONSTANT_NUMBER_TEXT = 1;
+    private static final int CONSTANT_VALUE = 2;
+    private static final int CONSTANT_PARAMETERS = 3;
+    private static final int CONSTANT_REDUCTIONS = 4;
+    private static final int CONSTANT_NAMES = 5;
+
+    // Wymaga areny po trim(): tablice mają dokładnie swoje rozmiary
+    void writeTo(DataOutputStream out) throws IOException {
+        SessionSnapshot.writeInts(out, kinds);
+        SessionSnapshot.writeInts(out, as);
+        SessionSnapshot.writeInts(out, bs);
+        SessionSnapshot.writeInts(out, cs);
+        SessionSnapshot.writeInts(out, ds);
+        SessionSnapshot.writeInts(out, lists);
+        SessionSnapshot.writeInts(out, topLevel);
+        out.writeInt(constantCount);
+        for (int i = 0; i < constantCount; i++) {
+            writeConstant(out, constants[i]);
+        }
+    }
+
+    // symbols[numer z pliku] - numer tej samej nazwy w bieżącym procesie
+    static AstArena readFrom(ByteBuffer in, int[] symbols) throws IOException {
+        AstArena arena = new AstArena();
+        arena.kinds = SessionSnapshot.readInts(in);
+        arena.as = SessionSnapshot.readInts(in);
+        arena.bs = SessionSnapshot.readInts(in);
+        arena.cs = SessionSnapshot.readInts(in);
+        arena.ds = SessionSnapshot.readInts(in);
+        arena.size = arena.kinds.length;
+        arena.lists = SessionSnapshot.readInts(in);
+        arena.listSize = arena.lists.length;
+        arena.topLevel = SessionSnapshot.readInts(in);
+        arena.topLevelCount = arena.topLevel.length;
+        arena.constantCount = in.getInt();
+        arena.constants = new Object[arena.constantCount];
+        for (int i = 0; i < arena.constantCount; i++) {
+            arena.constants[i] = readConstant(in);
+        }
+        arena.remapSymbols(symbols);
+        return arena;
+    }
+
+    // Pola z numerami symboli: nazwy zmiennych, przypisań, identyfikatorów, wywołań i funkcji
+    private void remapSymbols(int[] symbols) {
+        for (int n = 0; n < size; n++) {
+            switch (kinds[n]) {
+                case Statement.VARIABLE_DECLARATION -> bs[n] = symbols[bs[n]];
+                case Statement.ASSIGNMENT, Statement.FUNCTION_DECLARATION,
+                     EXPRESSION + Expression.IDENTIFIER, EXPRESSION + Expression.CALL -> as[n] = symbols[as[n]];
+                default -> { }
+            }
+        }
+    }
+
+    private static void writeConstant(DataOutputStream out, Object constant) throws IOException {
+        if (constant == null) {
+            out.writeByte(CONSTANT_NULL);
+        } else if (constant instanceof String text) {
+            out.writeByte(CONSTANT_NUMBER_TEXT);
+            SessionSnapshot.writeString(out, text);
+        } else if (constant instanceof Value value) {
+            out.writeByte(CONSTANT_VALUE);
+            SessionSnapshot.writeValue(out, value);
+        } else if (constant instanceof Set<?> names) {
+            out.writeByte(CONSTANT_NAMES);
+            out.writeInt(names.size());
+            for (Object name : names) SessionSnapshot.writeString(out, (String) name);
+        } else if (constant instanceof List<?> items && !items.isEmpty() && items.get(0) instanceof Reduction) {
+            out.writeByte(CONSTANT_REDUCTIONS);
+            out.writeInt(items.size());
+            for (Object item : items) {
+                Reduction r = (Reduction) item;
+                out.writeInt(ordinal(r.operator));
+                SessionSnapshot.writeString(out, r.name);
+            }
+        } else if (constant instanceof List<?> items) {
+            out.writeByte(CONSTANT_PARAMETERS);
+            out.writeInt(items.size());
+            for (Object item : items) {
+                Parameter p = (Parameter) item;
+                out.writeInt(ordinal(p.type));
+                SessionSnapshot.writeString(out, p.name);
+            }
+        } else {
+            throw new IOException("Cannot save constant " + constant.getClass().getSimpleName());
+        }
+    }
+
+    private static Object readConstant(ByteBuffer in) throws IOException {
+        int tag = in.get();
+        return switch (tag) {
+            case CONSTANT_NULL -> null;
+            case CONSTANT_NUMBER_TEXT -> SessionSnapshot.readString(in);
+            case CONSTANT_VALUE -> SessionSnapshot.readValue(in);
+            case CONSTANT_NAMES -> {
+                int count = in.getInt();
+                Set<String> names = new HashSet<>();
+                for (int i = 0; i < count; i++) names.add(SessionSnapshot.readString(in));
+                yield names;
+            }
+            case CONSTANT_REDUCTIONS -> {
+                int count = in.getInt();
+                List<Reduction> reductions = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Lexer.TokenType operator = tokenType(in.getInt());
+                    reductions.add(new Reduction(operator, SessionSnapshot.readString(in)));
+                }
+                yield reductions;
+            }
+            case CONSTANT_PARAMETERS -> {
+                int count = in.getInt();
+                List<Parameter> parameters = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Lexer.TokenType type = tokenType(in.getInt());
+                    parameters.add(new Parameter(type, SessionSnapshot.readString(in)));
+                }
+                yield parameters;
+            }
+            default -> throw new IOException("Unknown constant tag " + tag);
+        };
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.List;
+
+/**
+ * Pamięć zajmowana przez sparsowany program: drzewo obiektów (Program) kontra płaskie AST (AstArena)
+ * Generuje skrypt o zadanej liczbie linii, buduje obie postacie i mierzy zajętość sterty po GC,
+ * gdy trzymana jest tylko dana postać (tokeny są już zwolnione). Wynik w przeliczeniu na 10k linii
+ */
+public class AstMemoryBenchmark {
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String source = generate(lines);
+        int actualLines = source.split("\n").length;
+
+        long baseline = usedHeap();
+        Program program = new Optimizer(1).optimize(new Parser(Token.tokenize(source)).parse());
+        long treeBytes = usedHeap() - baseline;
+        int statements = program.statements.size();
+        program = null;
+
+        baseline = usedHeap();
+        AstArena arena = AstArena.build(new Parser(Token.tokenize(source)), new Optimizer(1));
+        long arenaBytes = usedHeap() - baseline;
+
+        if (arena.topLevelCount() != statements) {
+            throw new IllegalStateException("Statement count mismatch: " + arena.topLevelCount() + " != " + statements);
+        }
+
+        double per10k = 10_000.0 / actualLines;
+        System.out.println("=== AST retained heap (" + actualLines + " lines, " + arena.nodeCount() + " nodes) ===");
+        System.out.printf("Object tree: %10.0f bytes / 10k lines%n", treeBytes * per10k);
+        System.out.printf("Arena:       %10.0f bytes / 10k lines (arrays %.0f)%n",
+                arenaBytes * per10k, arena.arrayBytes() * per10k);
+        System.out.printf("Reduction:   %10.2fx%n", (double) treeBytes / arenaBytes);
+    }
+
+    // ===== DANE =====
+    // Funkcje z pętlami, warunkami i wywołaniami plus kod najwyższego poziomu, który je woła
+    private static String generate(int lines) {
+        StringBuilder out = new StringBuilder();
+        int count = 0;
+        for (int k = 0; count < lines; k++) {
+            List<String> chunk = List.of(
+                    "fn int64 f" + k + " ( int64 a , int64 b ) {",
+                    "  int64 s = " + k + " ;",
+                    "  for ( int64 i = 0 ; i < a ; i = i + 1 ) {",
+                    "    if ( i % 3 == 0 ) { s = s + i * b ; } else { s = s - 1 ; }",
+                    "  }",
+                    "  while ( s > 1000 ) { s = s / 2 ; }",
+                    "  return s + a * b - " + (k % 7) + " ;",
+                    "}",
+                    "int64 x" + k + " = f" + k + " ( " + (k % 10) + " , 4 ) ;",
+                    "println ( \"f" + k + "\" , x" + k + " ) ;");
+            for (String line : chunk) out.append(line).append('\n');
+            count += chunk.size();
+        }
+        return out.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
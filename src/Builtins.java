@@ -0,0 +1,274 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+// ===== FUNKCJA WBUDOWANA =====
+// Funkcja zaimplementowana w Javie. Liczba argumentów jest sprawdzana raz, przy wiązaniu miejsca
+// wywołania (FunctionCall.builtin), potem wywołanie idzie wprost do handlera. Funkcje liczbowe mają
+// szybkie ścieżki: int -> int (intUnary, intBinary) i liczba -> double (doubleUnary, doubleBinary),
+// bez tablicy argumentów i sprawdzania typów w handlerze; inne typy (int128, błędy) obsługuje handler.
+final class NativeFunction {
+    interface Handler {
+        Value call(interpreter context, Value[] arguments);
+    }
+
+    static final int VARIADIC = -1;
+
+    final String name;
+    final int symbol;
+    final int arity;
+    // Wynik zależy tylko od argumentów (analiza czystości, memoizacja funkcji, które ją wołają)
+    final boolean pure;
+    // Zastrzeżone (wyjście, kanały) mają pierwszeństwo przed funkcjami użytkownika;
+    // pozostałe przesłania funkcja użytkownika o tej samej nazwie
+    final boolean reserved;
+    final Handler handler;
+    final LongUnaryOperator intUnary;
+    final DoubleUnaryOperator doubleUnary;
+    final LongBinaryOperator intBinary;
+    final DoubleBinaryOperator doubleBinary;
+
+    private NativeFunction(String name, int arity, boolean pure, boolean reserved, Handler handler,
+                           LongUnaryOperator intUnary, DoubleUnaryOperator doubleUnary,
+                           LongBinaryOperator intBinary, DoubleBinaryOperator doubleBinary) {
+        this.name = name;
+        this.symbol = Symbols.intern(name);
+        this.arity = arity;
+        this.pure = pure;
+        this.reserved = reserved;
+        this.handler = handler;
+        this.intUnary = intUnary;
+        this.doubleUnary = doubleUnary;
+        this.intBinary = intBinary;
+        this.doubleBinary = doubleBinary;
+    }
+
+    // Funkcja z efektami ubocznymi, której nie da się przesłonić (print, kanały)
+    static NativeFunction reserved(String name, int arity, Handler handler) {
+        return new NativeFunction(name, arity, false, true, handler, null, null, null, null);
+    }
+
+    static NativeFunction pure(String name, int arity, Handler handler) {
+        return new NativeFunction(name, arity, true, false, handler, null, null, null, null);
+    }
+
+    static NativeFunction unary(String name, LongUnaryOperator intUnary, DoubleUnaryOperator doubleUnary, Handler handler) {
+        return new NativeFunction(name, 1, true, false, handler, intUnary, doubleUnary, null, null);
+    }
+
+    static NativeFunction binary(String name, LongBinaryOperator intBinary, DoubleBinaryOperator doubleBinary, Handler handler) {
+        return new NativeFunction(name, 2, true, false, handler, null, null, intBinary, doubleBinary);
+    }
+
+    // Wyjątek przy wiązaniu miejsca wywołania, null gdy liczba argumentów pasuje
+    RuntimeError arityError(int count) {
+        if (arity == VARIADIC || arity == count) return null;
+        return new RuntimeError(name + " expects " + arity + " arguments but got " + count);
+    }
+
+    Value call(interpreter context, Value a) {
+        if (a.kind == Value.INT) {
+            long x = ((IntValue) a).value;
+            if (intUnary != null) return new IntValue(intUnary.applyAsLong(x));
+            if (doubleUnary != null) return new DoubleValue(doubleUnary.applyAsDouble(x));
+        } else if (a.kind == Value.DOUBLE && doubleUnary != null) {
+            return new DoubleValue(doubleUnary.applyAsDouble(((DoubleValue) a).value));
+        }
+        return handler.call(context, new Value[] {a});
+    }
+
+    Value call(interpreter context, Value a, Value b) {
+        if (a.kind == Value.INT && b.kind == Value.INT && intBinary != null) {
+            return new IntValue(intBinary.applyAsLong(((IntValue) a).value, ((IntValue) b).value));
+        }
+        if (doubleBinary != null && Builtins.isNumber(a) && Builtins.isNumber(b)) {
+            return new DoubleValue(doubleBinary.applyAsDouble(Builtins.toDouble(a), Builtins.toDouble(b)));
+        }
+        return handler.call(context, new Value[] {a, b});
+    }
+}
+
+// ===== TABLICA FUNKCJI WBUDOWANYCH =====
+// Indeksowana numerem symbolu, jak FunctionTable. Jedna na proces: biblioteka (liczby, napisy)
+// rejestruje się tutaj, funkcje korzystające ze stanu interpretera (wyjście, kanały) -
+// interpreter.registerBuiltins(). Handlery dostają interpreter jako argument, bo miejsca
+// wywołań w AST modułów są współdzielone przez interpretery.
+final class Builtins {
+    private static volatile NativeFunction[] table = new NativeFunction[64];
+    private static final BitSet reserved = new BitSet();
+
+    static {
+        // Liczby
+        register(NativeFunction.unary("abs", Math::abs, Math::abs, (context, args) -> {
+            if (args[0] instanceof Int128Value v) return v.isNegative() ? v.negate() : v;
+            throw numberExpected("abs", args[0]);
+        }));
+        register(NativeFunction.binary("min", Math::min, Math::min, (context, args) -> minMax("min", args, true)));
+        register(NativeFunction.binary("max", Math::max, Math::max, (context, args) -> minMax("max", args, false)));
+        register(NativeFunction.binary("pow", Builtins::pow, Math::pow, numbers("pow", Math::pow)));
+        register(doubleFunction("sqrt", Math::sqrt));
+        register(doubleFunction("exp", Math::exp));
+        register(doubleFunction("log", Math::log));
+        register(doubleFunction("sin", Math::sin));
+        register(doubleFunction("cos", Math::cos));
+        register(doubleFunction("tan", Math::tan));
+        register(integerFunction("floor", Math::floor));
+        register(integerFunction("ceil", Math::ceil));
+        register(integerFunction("round", x -> Math.round(x)));
+
+        // Napisy
+        register(NativeFunction.pure("len", 1, (context, args) -> new IntValue(string("len", args[0]).length())));
+        register(NativeFunction.pure("str", 1, (context, args) ->
+                args[0] instanceof StringValue ? args[0] : new StringValue(String.valueOf(args[0]))));
+        register(NativeFunction.pure("upper", 1, (context, args) ->
+                new StringValue(string("upper", args[0]).toUpperCase(Locale.ROOT))));
+        register(NativeFunction.pure("lower", 1, (context, args) ->
+                new StringValue(string("lower", args[0]).toLowerCase(Locale.ROOT))));
+        register(NativeFunction.pure("trim", 1, (context, args) -> new StringValue(string("trim", args[0]).strip())));
+        register(NativeFunction.pure("indexOf", 2, (context, args) ->
+                new IntValue(string("indexOf", args[0]).indexOf(string("indexOf", args[1])))));
+        register(NativeFunction.pure("substr", 3, (context, args) -> {
+            String s = string("substr", args[0]);
+            long from = integer("substr", args[1]);
+            long to = integer("substr", args[2]);
+            if (from < 0 || to > s.length() || from > to) {
+                throw new RuntimeError("substr range " + from + ".." + to + " out of bounds for length " + s.length());
+            }
+            return new StringValue(s.substring((int) from, (int) to));
+        }));
+        register(NativeFunction.pure("parseInt", 1, (context, args) -> {
+            String s = string("parseInt", args[0]).strip();
+            try {
+                return new IntValue(Long.parseLong(s));
+            } catch (NumberFormatException e) {
+                throw new RuntimeError("parseInt: not an integer: \"" + s + "\"");
+            }
+        }));
+        register(NativeFunction.pure("parseDouble", 1, (context, args) -> {
+            String s = string("parseDouble", args[0]).strip();
+            try {
+                return new DoubleValue(Double.parseDouble(s));
+            } catch (NumberFormatException e) {
+                throw new RuntimeError("parseDouble: not a number: \"" + s + "\"");
+            }
+        }));
+    }
+
+    private Builtins() {}
+
+    static synchronized void register(NativeFunction function) {
+        NativeFunction[] t = table;
+        if (function.symbol >= t.length) {
+            t = Arrays.copyOf(t, Math.max(t.length * 2, function.symbol + 1));
+        }
+        t[function.symbol] = function;
+        if (function.reserved) reserved.set(function.symbol);
+        table = t;
+    }
+
+    static NativeFunction get(int symbol) {
+        NativeFunction[] t = table;
+        return symbol < t.length ? t[symbol] : null;
+    }
+
+    static boolean isReserved(int symbol) {
+        return reserved.get(symbol);
+    }
+
+    // Dla analizy czystości: nazwa spoza programu, którą obsługuje czysta funkcja wbudowana
+    static boolean isPure(String name) {
+        NativeFunction function = get(Symbols.intern(name));
+        return function != null && function.pure;
+    }
+
+    // ===== BIBLIOTEKA =====
+    // Liczba -> double (int128 przez konwersję)
+    private static NativeFunction doubleFunction(String name, DoubleUnaryOperator op) {
+        return NativeFunction.unary(name, null, op, (context, args) -> {
+            if (args[0] instanceof Int128Value v) return new DoubleValue(op.applyAsDouble(v.toDouble()));
+            throw numberExpected(name, args[0]);
+        });
+    }
+
+    // Zaokrąglenie do int; liczba całkowita przechodzi bez zmian
+    private static NativeFunction integerFunction(String name, DoubleUnaryOperator op) {
+        return NativeFunction.unary(name, x -> x, null, (context, args) -> switch (args[0].kind) {
+            case Value.DOUBLE -> new IntValue((long) op.applyAsDouble(((DoubleValue) args[0]).value));
+            case Value.INT128 -> args[0];
+            default -> throw numberExpected(name, args[0]);
+        });
+    }
+
+    private static NativeFunction.Handler numbers(String name, DoubleBinaryOperator op) {
+        return (context, args) -> {
+            if (!isNumber(args[0])) throw numberExpected(name, args[0]);
+            if (!isNumber(args[1])) throw numberExpected(name, args[1]);
+            return new DoubleValue(op.applyAsDouble(toDouble(args[0]), toDouble(args[1])));
+        };
+    }
+
+    // Pozostaje przypadek z int128 (oba argumenty całkowite)
+    private static Value minMax(String name, Value[] args, boolean min) {
+        if (!isNumber(args[0])) throw numberExpected(name, args[0]);
+        if (!isNumber(args[1])) throw numberExpected(name, args[1]);
+        if (args[0].kind == Value.DOUBLE || args[1].kind == Value.DOUBLE) {
+            double a = toDouble(args[0]), b = toDouble(args[1]);
+            return new DoubleValue(min ? Math.min(a, b) : Math.max(a, b));
+        }
+        Int128Value a = toInt128(args[0]), b = toInt128(args[1]);
+        return (a.compareTo(b) <= 0) == min ? args[0] : args[1];
+    }
+
+    // Potęgowanie przez podnoszenie do kwadratu, z przepełnieniem jak * na int; ujemny
+    // wykładnik daje część całkowitą wyniku, tak jak dzielenie całkowite
+    static long pow(long base, long exponent) {
+        if (exponent < 0) {
+            if (base == 0) throw new RuntimeError("Division by zero");
+            if (base == 1) return 1;
+            if (base == -1) return (exponent & 1) == 0 ? 1 : -1;
+            return 0;
+        }
+        long result = 1;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) result *= base;
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    // ===== ARGUMENTY =====
+    static boolean isNumber(Value value) {
+        return value.kind == Value.INT || value.kind == Value.DOUBLE || value.kind == Value.INT128;
+    }
+
+    static double toDouble(Value value) {
+        return switch (value.kind) {
+            case Value.INT -> ((IntValue) value).value;
+            case Value.DOUBLE -> ((DoubleValue) value).value;
+            default -> ((Int128Value) value).toDouble();
+        };
+    }
+
+    private static Int128Value toInt128(Value value) {
+        return value instanceof Int128Value v ? v : Int128Value.of(((IntValue) value).value);
+    }
+
+    private static String string(String name, Value value) {
+        if (value instanceof StringValue s) return s.value;
+        throw new RuntimeError(name + " expects a string but got " + value.getTypeName());
+    }
+
+    private static long integer(String name, Value value) {
+        if (value instanceof IntValue i) return i.value;
+        throw new RuntimeError(name + " expects an int but got " + value.getTypeName());
+    }
+
+    private static RuntimeError numberExpected(String name, Value value) {
+        return new RuntimeError(name + " expects a number but got " + value.getTypeName());
+    }
+}
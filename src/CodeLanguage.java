@@ -1,8 +1,14 @@
 import java.util.Scanner;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 
+import java.util.ArrayList;
 import java.util.List;
 /**
  * Główna klasa języka programowania
@@ -11,6 +17,14 @@ import java.util.List;
 public class CodeLanguage {
     private interpreter interpreter;
     private boolean verbose;
+    private int optimizationLevel = 1;
+    private boolean dumpAst;
+    private boolean memoStats;
+    private boolean lazyParsing;
+    private boolean parallelParsing;
+    private boolean arenaAst;
+    // Plik raportu LCOV (--coverage) albo null
+    private String coverageReport;
 
     public CodeLanguage() {
         this.interpreter = new interpreter();
@@ -22,6 +36,70 @@ public class CodeLanguage {
         this.verbose = verbose;
     }
 
+    public CodeLanguage(boolean verbose, boolean unbuffered) {
+        this(verbose);
+        // Wyjście skryptu idzie bezpośrednio na deskryptor stdout, z pominięciem PrintStream
+        FileOutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        this.interpreter.setOutput(new OutputSink(stdout, OutputSink.DEFAULT_BUFFER_SIZE * 8, unbuffered));
+        Runtime.getRuntime().addShutdownHook(new Thread(interpreter::flushOutput));
+    }
+
+    /**
+     * Ustawia poziom optymalizacji AST (0, 1 lub 2)
+     */
+    public void setOptimizationLevel(int level) {
+        this.optimizationLevel = level;
+    }
+
+    /**
+     * Włącza wypisywanie zoptymalizowanego AST przed wykonaniem
+     */
+    public void setDumpAst(boolean dumpAst) {
+        this.dumpAst = dumpAst;
+    }
+
+    /**
+     * Włącza leniwe parsowanie ciał funkcji (parsowane przy pierwszym wywołaniu)
+     */
+    public void setLazyParsing(boolean lazyParsing) {
+        this.lazyParsing = lazyParsing;
+    }
+
+    /**
+     * Włącza równoległe parsowanie deklaracji najwyższego poziomu
+     */
+    public void setParallelParsing(boolean parallelParsing) {
+        this.parallelParsing = parallelParsing;
+    }
+
+    /**
+     * Włącza płaskie AST w arenie (tablice int zamiast drzewa obiektów)
+     */
+    public void setArenaAst(boolean arenaAst) {
+        this.arenaAst = arenaAst;
+    }
+
+    /**
+     * Włącza pomiar pokrycia linii i gałęzi; raport LCOV trafia do podanego pliku
+     */
+    public void setCoverageReport(String coverageReport) {
+        this.coverageReport = coverageReport;
+    }
+
+    /**
+     * Limit cache memoizacji czystych funkcji w MiB (0 wyłącza)
+     */
+    public void setMemoLimit(long megabytes) {
+        interpreter.setMemoLimit(megabytes << 20);
+    }
+
+    /**
+     * Włącza wypisywanie statystyk memoizacji na stderr po wykonaniu
+     */
+    public void setMemoStats(boolean memoStats) {
+        this.memoStats = memoStats;
+    }
+
     /**
      * Uruchamia kod z pliku
      */
@@ -34,7 +112,13 @@ public class CodeLanguage {
             }
 
             String code = Files.readString(file.toPath());
-            run(code);
+            interpreter.setModuleBase(file.getAbsoluteFile().toPath().getParent());
+            if (coverageReport != null) {
+                runWithCoverage(filepath, code);
+            } else {
+                run(code);
+            }
+            printMemoStats();
 
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
@@ -48,6 +132,127 @@ public class CodeLanguage {
         }
     }
 
+    // Raport jest zapisywany także wtedy, gdy skrypt kończy się błędem
+    private void runWithCoverage(String filepath, String code) throws IOException {
+        Coverage coverage = new Coverage(filepath);
+        try {
+            interpreter.coverCode(code, coverage);
+        } finally {
+            Files.writeString(new File(coverageReport).toPath(), coverage.toLcov());
+            System.err.println("Coverage: " + coverage.summary() + " -> " + coverageReport);
+        }
+    }
+
+    /**
+     * Uruchamia plik w trybie strumieniowym: źródło jest czytane porcjami, a każda instrukcja
+     * najwyższego poziomu jest parsowana, optymalizowana i wykonywana przed następną.
+     * W pamięci zostaje tylko bieżąca instrukcja (i ciała zadeklarowanych funkcji).
+     */
+    public void runFileStreaming(String filepath) {
+        File file = new File(filepath);
+        if (!file.exists()) {
+            System.err.println("Error: File not found: " + filepath);
+            System.exit(1);
+        }
+
+        interpreter.setModuleBase(file.getAbsoluteFile().toPath().getParent());
+        try (Reader reader = Files.newBufferedReader(file.toPath())) {
+            Parser parser = new Parser(new TokenStream(reader));
+            parser.setLazyFunctionBodies(lazyParsing);
+            Optimizer optimizer = new Optimizer(optimizationLevel);
+            try {
+                Statement statement;
+                while ((statement = parser.parseNext()) != null) {
+                    List<Statement> chunk = new ArrayList<>(1);
+                    chunk.add(statement);
+                    Program program = optimizer.optimize(new Program(chunk));
+
+                    if (dumpAst) {
+                        interpreter.flushOutput();
+                        System.out.print(AstPrinter.print(program));
+                        System.out.flush();
+                    }
+
+                    interpreter.interpretIncrementally(program);
+                }
+            } finally {
+                interpreter.flushOutput();
+            }
+            printMemoStats();
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            if (verbose) {
+                e.printStackTrace();
+            }
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sprawdza składnię plików bez wykonywania ich. Każdy plik jest parsowany raz,
+     * a wszystkie błędy wypisywane jako plik:linia:kolumna: komunikat
+     * @return łączna liczba błędów
+     */
+    public int checkFiles(List<String> paths) {
+        int errors = 0;
+        for (String path : paths) {
+            try {
+                Parser parser = new Parser(Token.tokenize(Files.readString(new File(path).toPath())));
+                parser.parseAll();
+                for (Diagnostic diagnostic : parser.getDiagnostics()) {
+                    System.err.println(path + ":" + diagnostic);
+                }
+                errors += parser.getDiagnostics().size();
+            } catch (IOException e) {
+                System.err.println(path + ": Error reading file: " + e.getMessage());
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Kompiluje plik AOT do wykonywalnego JAR-a: program jest tłumaczony na klasę Javy
+     * (nazwa z nazwy pliku), kompilowany kompilatorem z JDK i pakowany z Main-Class w manifeście
+     * @return true, gdy JAR został zapisany
+     */
+    public boolean compileFile(String filepath, String jarPath) {
+        try {
+            Parser parser = new Parser(Token.tokenize(Files.readString(new File(filepath).toPath())));
+            Program program = parser.parse();
+            String className = JavaTranspiler.classNameFor(filepath);
+
+            if (verbose) {
+                System.out.println("=== Generated Java ===");
+                System.out.print(JavaTranspiler.transpile(program, className));
+                System.out.println();
+            }
+
+            AotCompiler.compileToJar(program, className, new File(jarPath).toPath());
+            System.out.println("Compiled " + filepath + " -> " + jarPath + " (Main-Class: " + className + ")");
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            if (verbose) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    private void printMemoStats() {
+        if (memoStats) {
+            interpreter.flushOutput();
+            System.err.println(interpreter.getMemoStats());
+        }
+    }
+
     /**
      * Uruchamia tryb interaktywny (REPL)
      */
@@ -85,6 +290,11 @@ public class CodeLanguage {
                 continue;
             }
 
+            if (line.startsWith("save ") || line.startsWith("load ")) {
+                sessionCommand(line.substring(0, 4), line.substring(5).trim());
+                continue;
+            }
+
             if (line.isEmpty()) {
                 continue;
             }
@@ -122,6 +332,21 @@ public class CodeLanguage {
         scanner.close();
     }
 
+    // save PLIK / load PLIK - binarna migawka zmiennych i funkcji sesji
+    private void sessionCommand(String command, String file) {
+        try {
+            if (command.equals("save")) {
+                System.out.println("Session saved: " + interpreter.saveSession(Path.of(file)));
+            } else {
+                System.out.println("Session loaded: " + interpreter.loadSession(Path.of(file)));
+            }
+        } catch (NoSuchFileException e) {
+            System.err.println("Error: File not found: " + file);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
     /**
      * Wykonuje kod źródłowy
      */
@@ -145,13 +370,31 @@ public class CodeLanguage {
             System.out.println("=== Parsing ===");
         }
 
+        if (arenaAst) {
+            runArena(tokens);
+            return;
+        }
+
         // Parsowanie
         Parser parser = new Parser(tokens);
-        Program program = parser.parse();
+        parser.setLazyFunctionBodies(lazyParsing);
+        Program program = parallelParsing ? parser.parseParallel() : parser.parse();
 
         if (verbose) {
             System.out.println("AST created successfully");
             System.out.println();
+        }
+
+        // Optymalizacja
+        program = new Optimizer(optimizationLevel).optimize(program);
+
+        if (dumpAst) {
+            System.out.println("=== Optimized AST (-O" + optimizationLevel + ") ===");
+            System.out.print(AstPrinter.print(program));
+            System.out.println();
+        }
+
+        if (verbose) {
             System.out.println("=== Interpreting ===");
         }
 
@@ -164,6 +407,24 @@ public class CodeLanguage {
         }
     }
 
+    // Parsowanie i optymalizacja po jednej instrukcji prosto do areny, potem wykonanie po indeksach
+    private void runArena(List<Token> tokens) {
+        AstArena arena = AstArena.build(new Parser(tokens), new Optimizer(optimizationLevel));
+
+        if (verbose) {
+            System.out.println("Arena created: " + arena.nodeCount() + " nodes");
+            System.out.println();
+        }
+
+        if (dumpAst) {
+            System.out.println("=== Optimized AST (-O" + optimizationLevel + ", arena) ===");
+            System.out.print(AstPrinter.print(arena.toProgram()));
+            System.out.println();
+        }
+
+        interpreter.interpret(arena);
+    }
+
     /**
      * Wyświetla pomoc
      */
@@ -173,6 +434,8 @@ public class CodeLanguage {
         System.out.println("Available commands:");
         System.out.println("  exit, quit  - Exit REPL");
         System.out.println("  reset       - Clear all variables and functions");
+        System.out.println("  save FILE   - Save variables and functions to FILE");
+        System.out.println("  load FILE   - Replace the session with one saved to FILE");
         System.out.println("  help        - Show this help");
         System.out.println();
         System.out.println("Example code:");
@@ -183,6 +446,17 @@ public class CodeLanguage {
         System.out.println("    return a + b;");
         System.out.println("  }");
         System.out.println();
+        System.out.println("  // functions of another file (path relative to the importing file)");
+        System.out.println("  import \"lib.cl\";");
+        System.out.println();
+        System.out.println("  // results of pure functions are memoized; 'cached fn' forces it");
+        System.out.println("  cached fn int64 paths(int64 x, int64 y) { ... }");
+        System.out.println();
+        System.out.println("Builtins (a function with the same name replaces all but print/channels):");
+        System.out.println("  print println flush channel send recv");
+        System.out.println("  abs min max pow sqrt exp log sin cos tan floor ceil round");
+        System.out.println("  len str upper lower trim indexOf substr parseInt parseDouble");
+        System.out.println();
     }
 
     /**
@@ -190,19 +464,65 @@ public class CodeLanguage {
      */
     public static void main(String[] args) {
         boolean verbose = false;
-        String filepath = null;
+        boolean unbuffered = false;
+        boolean dumpAst = false;
+        boolean memoStats = false;
+        boolean streaming = false;
+        boolean lazyParsing = false;
+        boolean parallelParsing = false;
+        boolean arenaAst = false;
+        boolean check = false;
+        boolean compile = false;
+        String jarPath = null;
+        String coverageReport = null;
+        long memoLimit = -1;
+        int optimizationLevel = 1;
+        List<String> files = new ArrayList<>();
 
         // Parsowanie argumentów
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "-v", "--verbose" -> verbose = true;
+                case "-u", "--unbuffered" -> unbuffered = true;
+                case "-O0" -> optimizationLevel = 0;
+                case "-O1" -> optimizationLevel = 1;
+                case "-O2" -> optimizationLevel = 2;
+                case "--dump-ast" -> dumpAst = true;
+                case "--stream" -> streaming = true;
+                case "--lazy" -> lazyParsing = true;
+                case "--parallel-parse" -> parallelParsing = true;
+                case "--arena" -> arenaAst = true;
+                case "--check" -> check = true;
+                case "--memo-stats" -> memoStats = true;
+                case "--compile" -> compile = true;
+                case "--coverage" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("--coverage requires a report file");
+                        System.exit(1);
+                    }
+                    coverageReport = args[++i];
+                }
+                case "-o" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("-o requires an output file");
+                        System.exit(1);
+                    }
+                    jarPath = args[++i];
+                }
+                case "--memo-limit" -> {
+                    if (i + 1 >= args.length) {
+                        System.err.println("--memo-limit requires a size in MiB");
+                        System.exit(1);
+                    }
+                    memoLimit = Long.parseLong(args[++i]);
+                }
                 case "-h", "--help" -> {
                     printUsage();
                     System.exit(0);
                 }
                 default -> {
-                    if (filepath == null && !args[i].startsWith("-")) {
-                        filepath = args[i];
+                    if (!args[i].startsWith("-")) {
+                        files.add(args[i]);
                     } else {
                         System.err.println("Unknown option: " + args[i]);
                         printUsage();
@@ -212,11 +532,50 @@ public class CodeLanguage {
             }
         }
 
-        CodeLanguage language = new CodeLanguage(verbose);
+        if (check) {
+            int errors = new CodeLanguage(verbose).checkFiles(files);
+            System.exit(errors == 0 ? 0 : 1);
+        }
+
+        if (compile) {
+            if (files.size() != 1) {
+                System.err.println("--compile requires exactly one file");
+                System.exit(1);
+            }
+            String source = files.get(0);
+            if (jarPath == null) {
+                String name = new File(source).getName();
+                int dot = name.lastIndexOf('.');
+                jarPath = (dot > 0 ? name.substring(0, dot) : name) + ".jar";
+            }
+            System.exit(new CodeLanguage(verbose).compileFile(source, jarPath) ? 0 : 1);
+        }
+
+        // Poza --check uruchamiamy co najwyżej jeden plik
+        if (files.size() > 1) {
+            System.err.println("Unknown option: " + files.get(1));
+            printUsage();
+            System.exit(1);
+        }
+        String filepath = files.isEmpty() ? null : files.get(0);
+
+        CodeLanguage language = new CodeLanguage(verbose, unbuffered);
+        language.setOptimizationLevel(optimizationLevel);
+        language.setDumpAst(dumpAst);
+        language.setMemoStats(memoStats);
+        language.setLazyParsing(lazyParsing);
+        language.setParallelParsing(parallelParsing);
+        language.setArenaAst(arenaAst);
+        language.setCoverageReport(coverageReport);
+        if (memoLimit >= 0) language.setMemoLimit(memoLimit);
 
         if (filepath != null) {
             // Tryb pliku
-            language.runFile(filepath);
+            if (streaming) {
+                language.runFileStreaming(filepath);
+            } else {
+                language.runFile(filepath);
+            }
         } else {
             // Tryb REPL
             language.runREPL();
@@ -231,6 +590,19 @@ public class CodeLanguage {
         System.out.println();
         System.out.println("Options:");
         System.out.println("  -v, --verbose    Enable verbose output");
+        System.out.println("  -u, --unbuffered Flush script output after every print");
+        System.out.println("  -O0, -O1, -O2    AST optimization level (default -O1)");
+        System.out.println("  --dump-ast       Print the optimized AST before running");
+        System.out.println("  --stream         Lex, parse and run the file one top-level statement at a time");
+        System.out.println("  --lazy           Parse function bodies on first call");
+        System.out.println("  --parallel-parse Parse top-level declarations on all cores");
+        System.out.println("  --arena          Store the AST in flat int arrays and run it by node index");
+        System.out.println("  --check FILES... Report all syntax errors without running");
+        System.out.println("  --coverage LCOV  Measure line/branch coverage and write an LCOV report");
+        System.out.println("  --compile FILE   Compile FILE ahead of time into a runnable JAR (needs a JDK)");
+        System.out.println("  -o JAR           Output JAR for --compile (default: FILE name with .jar)");
+        System.out.println("  --memo-limit N   Memoization cache size in MiB (default 16, 0 disables)");
+        System.out.println("  --memo-stats     Print memoization hit/miss/eviction stats to stderr");
         System.out.println("  -h, --help       Show this help message");
         System.out.println();
         System.out.println("If no file is specified, starts in REPL mode.");
@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Pokrycie linii, gałęzi i funkcji skryptu (--coverage, edytor), raport w formacie LCOV.
+ * Instrumentacja jest leniwa i jednorazowa: każda instrukcja dostaje sondę (ProbeStatement),
+ * która przy pierwszym wykonaniu ustawia bit linii i przywraca oryginał w liście, a listy
+ * zagnieżdżone (ciała if/while/for, bloki, funkcje) są obudowywane dopiero przy pierwszym
+ * wykonaniu instrukcji, która je zawiera. Warunek if dostaje BranchProbe, dopóki nie wypadną oba
+ * wyniki. Pętla z niepustym ciałem wykonuje się bez zmian (z szybką ścieżką pętli licznikowej):
+ * wynik "prawda" zapisuje pierwsza sonda ciała, "fałsz" - znacznik wykonany po normalnym wyjściu.
+ * Działa na nieoptymalizowanym AST, bo tylko ono niesie numery linii źródła.
+ */
+final class Coverage implements Probe {
+    // Punkt rozgałęzienia: gałąź 0 - warunek prawdziwy, 1 - fałszywy
+    private static final class Branch {
+        final Statement statement;
+        // Lista, w której stoi instrumentowana kopia albo sonda pętli (null po przywróceniu)
+        List<Statement> owner;
+        Statement instrumented;
+        // Pętla ze znacznikiem wyjścia: sonda zostaje w liście, wykonuje się "if (true) { pętla; znacznik }"
+        ProbeStatement loopProbe;
+        Statement withExit;
+        // Wyniki już zapisane - szybka ścieżka bez blokady dla warunku, który nie zmienia wyniku
+        volatile boolean seenTrue;
+        volatile boolean seenFalse;
+
+        Branch(Statement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private final String sourceName;
+    // Linie z instrukcjami i linie wykonane
+    private final BitSet lines = new BitSet();
+    private final BitSet hitLines = new BitSet();
+    private final List<Branch> branches = new ArrayList<>();
+    private final Map<Statement, Integer> branchIds = new IdentityHashMap<>();
+    // Ciała pętli -> ich gałąź; pierwsza wykonana instrukcja ciała oznacza warunek prawdziwy
+    private final Map<List<Statement>, Integer> loopBodies = new IdentityHashMap<>();
+    // Bit 2 * id + (wynik ? 0 : 1)
+    private final BitSet branchHits = new BitSet();
+    private final List<FunctionDeclaration> functions = new ArrayList<>();
+    private final Map<List<Statement>, Integer> functionBodies = new IdentityHashMap<>();
+    private final BitSet hitFunctions = new BitSet();
+    // Sondy czekające na pierwsze wykonanie -> lista, w której stoją
+    private final Map<ProbeStatement, List<Statement>> pending = new IdentityHashMap<>();
+
+    Coverage(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    // Statycznie zbiera linie, gałęzie i funkcje (do raportu), obudowuje tylko najwyższy poziom
+    synchronized void attach(Program program) {
+        scan(program.statements);
+        instrument(program.statements);
+    }
+
+    private void scan(List<Statement> statements) {
+        if (statements == null) return;
+        for (Statement s : statements) {
+            if (s.line > 0) lines.set(s.line);
+            if (s instanceof IfStatement i) {
+                addBranch(s);
+                scan(i.thenBranch);
+                scan(i.elseBranch);
+            } else if (s instanceof WhileStatement w) {
+                addLoop(s, w.body);
+                scan(w.body);
+            } else if (s instanceof ForStatement f) {
+                if (f.condition != null) addLoop(s, f.body);
+                scan(f.body);
+            } else if (s instanceof ParallelForStatement p) {
+                scan(p.loop.body);
+            } else if (s instanceof BlockStatement b) {
+                scan(b.statements);
+            } else if (s instanceof FunctionDeclaration f && f.body != null) {
+                functionBodies.put(f.body, functions.size());
+                functions.add(f);
+                scan(f.body);
+            }
+        }
+    }
+
+    private int addBranch(Statement statement) {
+        branchIds.put(statement, branches.size());
+        branches.add(new Branch(statement));
+        return branches.size() - 1;
+    }
+
+    private void addLoop(Statement statement, List<Statement> body) {
+        int id = addBranch(statement);
+        if (!body.isEmpty()) loopBodies.put(body, id);
+    }
+
+    private void instrument(List<Statement> statements) {
+        if (statements == null) return;
+        for (int i = 0; i < statements.size(); i++) {
+            Statement s = statements.get(i);
+            if (s instanceof ProbeStatement) continue;
+            ProbeStatement probe = new ProbeStatement(s, this);
+            pending.put(probe, statements);
+            statements.set(i, probe);
+        }
+    }
+
+    // ===== SONDY =====
+    @Override
+    public synchronized Statement reached(ProbeStatement site, Environment environment) {
+        List<Statement> owner = pending.remove(site);
+        if (owner == null) return loopReached(site);
+        Statement statement = site.statement;
+        if (statement.line > 0) hitLines.set(statement.line);
+        Integer function = functionBodies.get(owner);
+        if (function != null) hitFunctions.set(function);
+        Integer loop = loopBodies.get(owner);
+        if (loop != null) record(loop, true);
+
+        Statement next = instrumentChildren(statement, owner);
+        Integer id = branchIds.get(statement);
+        if (id != null && next == statement) {
+            // Pętla ze znacznikiem wyjścia - sonda zostaje, dopóki nie wypadną oba wyniki
+            Branch branch = branches.get(id);
+            branch.owner = owner;
+            branch.loopProbe = site;
+            branch.withExit = withExit(statement, id);
+            return branch.withExit;
+        }
+        replace(owner, site, next);
+        return next;
+    }
+
+    // Kolejne wykonanie pętli, której wyniki nie są jeszcze komplet
+    private Statement loopReached(ProbeStatement site) {
+        Integer id = branchIds.get(site.statement);
+        if (id == null) return site.statement;
+        Branch branch = branches.get(id);
+        return branch.loopProbe == site ? branch.withExit : site.statement;
+    }
+
+    // Obudowuje listy zagnieżdżone; dla if i pętli o pustym ciele zwraca kopię z BranchProbe w warunku
+    private Statement instrumentChildren(Statement s, List<Statement> owner) {
+        if (s instanceof IfStatement i) {
+            instrument(i.thenBranch);
+            instrument(i.elseBranch);
+            return withBranchProbe(s, owner, id ->
+                    new IfStatement(new BranchProbe(i.condition, this, id), i.thenBranch, i.elseBranch));
+        }
+        if (s instanceof WhileStatement w) {
+            instrument(w.body);
+            if (!w.body.isEmpty()) return s;
+            return withBranchProbe(s, owner, id -> new WhileStatement(new BranchProbe(w.condition, this, id), w.body));
+        }
+        if (s instanceof ForStatement f) {
+            instrument(f.body);
+            if (!f.body.isEmpty()) return s;
+            return withBranchProbe(s, owner, id ->
+                    new ForStatement(f.initializer, new BranchProbe(f.condition, this, id), f.increment, f.body));
+        }
+        if (s instanceof ParallelForStatement p) instrument(p.loop.body);
+        if (s instanceof BlockStatement b) instrument(b.statements);
+        if (s instanceof FunctionDeclaration f) instrument(f.body);
+        return s;
+    }
+
+    private Statement withBranchProbe(Statement s, List<Statement> owner, IntFunction<Statement> copy) {
+        Integer id = branchIds.get(s);
+        if (id == null) return s;
+        Branch branch = branches.get(id);
+        branch.owner = owner;
+        branch.instrumented = copy.apply(id);
+        branch.instrumented.line = s.line;
+        return branch.instrumented;
+    }
+
+    // if (true) { pętla; znacznik } - if nie tworzy zasięgu, a znacznik wykonuje się tylko po
+    // normalnym wyjściu z pętli, czyli po fałszywym warunku (return i błędy go omijają)
+    private Statement withExit(Statement loop, int id) {
+        Statement marker = new ProbeStatement(new ExpressionStatement(new BooleanLiteral(true)), (site, environment) -> {
+            record(id, false);
+            return site.statement;
+        });
+        Statement wrapper = new IfStatement(new BooleanLiteral(true), List.of(loop, marker), null);
+        wrapper.line = loop.line;
+        return wrapper;
+    }
+
+    // Wołane przy każdej ewaluacji warunku, dopóki instrumentowana kopia się wykonuje
+    void branchTaken(BranchProbe probe, boolean taken) {
+        Branch branch = branches.get(probe.branch);
+        if (taken ? branch.seenTrue : branch.seenFalse) return;
+        record(probe.branch, taken);
+    }
+
+    // Po obu wynikach wraca oryginalna instrukcja
+    private synchronized void record(int id, boolean taken) {
+        Branch branch = branches.get(id);
+        branchHits.set(taken ? 2 * id : 2 * id + 1);
+        if (taken) branch.seenTrue = true;
+        else branch.seenFalse = true;
+        if (!branch.seenTrue || !branch.seenFalse || branch.owner == null) return;
+        replace(branch.owner, branch.loopProbe != null ? branch.loopProbe : branch.instrumented, branch.statement);
+        branch.owner = null;
+        branch.loopProbe = null;
+        branch.instrumented = null;
+    }
+
+    // ArrayList.set nie zmienia modCount, więc podmiana w trakcie iteracji po liście jest bezpieczna
+    private static void replace(List<Statement> list, Statement current, Statement replacement) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == current) {
+                list.set(i, replacement);
+                return;
+            }
+        }
+    }
+
+    // ===== WYNIKI =====
+    synchronized boolean hasCode(int line) {
+        return lines.get(line);
+    }
+
+    synchronized boolean isHit(int line) {
+        return hitLines.get(line);
+    }
+
+    synchronized String summary() {
+        return String.format(Locale.ROOT, "lines %d/%d (%.1f%%), branches %d/%d, functions %d/%d",
+                hitLines.cardinality(), lines.cardinality(),
+                lines.isEmpty() ? 100.0 : 100.0 * hitLines.cardinality() / lines.cardinality(),
+                branchHits.cardinality(), 2 * branches.size(),
+                hitFunctions.cardinality(), functions.size());
+    }
+
+    /**
+     * Raport LCOV (tracefile): funkcje (FN/FNDA), gałęzie (BRDA) i linie (DA) jednego pliku.
+     * Liczniki są bitami - 1 oznacza "wykonane co najmniej raz"
+     */
+    synchronized String toLcov() {
+        StringBuilder out = new StringBuilder();
+        out.append("TN:\n");
+        out.append("SF:").append(sourceName).append('\n');
+
+        for (FunctionDeclaration f : functions) {
+            out.append("FN:").append(f.line).append(',').append(f.name).append('\n');
+        }
+        for (int i = 0; i < functions.size(); i++) {
+            out.append("FNDA:").append(hitFunctions.get(i) ? 1 : 0).append(',').append(functions.get(i).name).append('\n');
+        }
+        out.append("FNF:").append(functions.size()).append('\n');
+        out.append("FNH:").append(hitFunctions.cardinality()).append('\n');
+
+        for (int id = 0; id < branches.size(); id++) {
+            int line = branches.get(id).statement.line;
+            boolean reached = branchHits.get(2 * id) || branchHits.get(2 * id + 1);
+            for (int outcome = 0; outcome < 2; outcome++) {
+                String taken = !reached ? "-" : branchHits.get(2 * id + outcome) ? "1" : "0";
+                out.append("BRDA:").append(line).append(',').append(id).append(',').append(outcome)
+                        .append(',').append(taken).append('\n');
+            }
+        }
+        out.append("BRF:").append(2 * branches.size()).append('\n');
+        out.append("BRH:").append(branchHits.cardinality()).append('\n');
+
+        for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+            out.append("DA:").append(line).append(',').append(hitLines.get(line) ? 1 : 0).append('\n');
+        }
+        out.append("LF:").append(lines.cardinality()).append('\n');
+        out.append("LH:").append(hitLines.cardinality()).append('\n');
+        out.append("end_of_record\n");
+        return out.toString();
+    }
+}
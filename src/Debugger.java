@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Debugger skryptów dla edytora (breakpointy, krok, podgląd zmiennych).
+ * Nie dokłada żadnego sprawdzenia do execute: instrukcja z linii z breakpointem jest podmieniana
+ * w swojej liście AST na ProbeStatement, a po usunięciu breakpointu oryginał wraca na miejsce.
+ * Krok (i zatrzymanie) obudowuje na chwilę wszystkie instrukcje, po wznowieniu zostają tylko
+ * breakpointy. Program wstrzymuje się na własnym wątku wykonania; polecenia (resume, step, stop,
+ * breakpointy) przychodzą z wątku interfejsu.
+ * Ciała parallel for nie są obudowywane - wykonują je wątki puli.
+ */
+final class Debugger implements Probe {
+    // Stan wstrzymanego programu: linia i zmienne zasięgów od najbardziej wewnętrznego do globalnego
+    static final class Frame {
+        final int line;
+        final List<Map<String, String>> scopes;
+
+        Frame(int line, List<Map<String, String>> scopes) {
+            this.line = line;
+            this.scopes = scopes;
+        }
+    }
+
+    // Wołany na wątku wykonania, zanim program się wstrzyma
+    interface Listener {
+        void paused(Frame frame);
+    }
+
+    // Przerwanie wykonania przez stop(); przechodzi przez interpret bez komunikatu Runtime Error
+    static final class Stopped extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stopped() {
+            super("Stopped by debugger", null, false, false);
+        }
+    }
+
+    // Miejsce instrukcji w AST: lista, która ją zawiera, i obwódka, gdy jest wstawiona.
+    // primary - pierwsza instrukcja swojej linii (tylko na nich zatrzymują się breakpointy)
+    private static final class Site {
+        final List<Statement> owner;
+        final Statement statement;
+        final boolean primary;
+        ProbeStatement probe;
+
+        Site(List<Statement> owner, Statement statement, boolean primary) {
+            this.owner = owner;
+            this.statement = statement;
+            this.primary = primary;
+        }
+    }
+
+    private final Listener listener;
+    private final Set<Integer> breakpoints = new HashSet<>();
+    private final Map<Integer, List<Site>> sites = new HashMap<>();
+    private final List<Site> allSites = new ArrayList<>();
+    private boolean stepping;
+    private boolean paused;
+    private boolean stopped;
+
+    Debugger(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ===== PROGRAM =====
+    synchronized void attach(Program program) {
+        detach();
+        stopped = false;
+        index(program.statements, -1);
+        for (int line : breakpoints) install(line, true);
+    }
+
+    // Przywraca oryginalne instrukcje (np. po zakończeniu wykonania)
+    synchronized void detach() {
+        for (Site site : allSites) uninstall(site);
+        sites.clear();
+        allSites.clear();
+        stepping = false;
+        paused = false;
+    }
+
+    private void index(List<Statement> statements, int enclosingLine) {
+        if (statements == null) return;
+        int previousLine = enclosingLine;
+        for (Statement s : statements) {
+            if (s.line > 0) {
+                Site site = new Site(statements, s, s.line != previousLine);
+                sites.computeIfAbsent(s.line, line -> new ArrayList<>()).add(site);
+                allSites.add(site);
+                previousLine = s.line;
+            }
+            if (s instanceof IfStatement i) {
+                index(i.thenBranch, s.line);
+                index(i.elseBranch, s.line);
+            } else if (s instanceof WhileStatement w) {
+                index(w.body, s.line);
+            } else if (s instanceof ForStatement f) {
+                index(f.body, s.line);
+            } else if (s instanceof BlockStatement b) {
+                index(b.statements, s.line);
+            } else if (s instanceof FunctionDeclaration f) {
+                // Ciało wykonuje się przy wywołaniu, nie przy deklaracji - osobne zatrzymanie
+                index(f.body, -1);
+            }
+        }
+    }
+
+    // ===== BREAKPOINTY =====
+    synchronized void setBreakpoint(int line, boolean enabled) {
+        if (enabled) {
+            breakpoints.add(line);
+            install(line, true);
+        } else {
+            breakpoints.remove(line);
+            if (!stepping) {
+                for (Site site : sites.getOrDefault(line, List.of())) uninstall(site);
+            }
+        }
+    }
+
+    synchronized Set<Integer> breakpoints() {
+        return Set.copyOf(breakpoints);
+    }
+
+    private void install(int line, boolean primaryOnly) {
+        for (Site site : sites.getOrDefault(line, List.of())) {
+            if (!primaryOnly || site.primary) install(site);
+        }
+    }
+
+    // ArrayList.set nie zmienia modCount, więc podmiana w trakcie iteracji po liście jest bezpieczna
+    private void install(Site site) {
+        if (site.probe != null) return;
+        int index = indexOf(site.owner, site.statement);
+        if (index < 0) return;
+        site.probe = new ProbeStatement(site.statement, this);
+        site.owner.set(index, site.probe);
+    }
+
+    private void uninstall(Site site) {
+        if (site.probe == null) return;
+        int index = indexOf(site.owner, site.probe);
+        if (index >= 0) site.owner.set(index, site.statement);
+        site.probe = null;
+    }
+
+    private void installAll() {
+        for (Site site : allSites) install(site);
+    }
+
+    // Zostają tylko obwódki breakpointów
+    private void uninstallStepProbes() {
+        for (Site site : allSites) {
+            if (!site.primary || !breakpoints.contains(site.statement.line)) uninstall(site);
+        }
+    }
+
+    private static int indexOf(List<Statement> list, Statement statement) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == statement) return i;
+        }
+        return -1;
+    }
+
+    // ===== POLECENIA (wątek interfejsu) =====
+    synchronized void resume() {
+        stepping = false;
+        uninstallStepProbes();
+        paused = false;
+        notifyAll();
+    }
+
+    // Wznawia do następnej wykonanej instrukcji (także wewnątrz wywoływanej funkcji)
+    synchronized void step() {
+        stepping = true;
+        installAll();
+        paused = false;
+        notifyAll();
+    }
+
+    // Program kończy się przy najbliższej instrukcji
+    synchronized void stop() {
+        stopped = true;
+        installAll();
+        notifyAll();
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    // ===== WĄTEK WYKONANIA =====
+    @Override
+    public Statement reached(ProbeStatement site, Environment environment) {
+        Frame frame;
+        synchronized (this) {
+            if (stopped) throw new Stopped();
+            if (!stepping && !breakpoints.contains(site.line)) return site.statement;
+            stepping = false;
+            paused = true;
+            frame = new Frame(site.line, snapshot(environment));
+        }
+
+        listener.paused(frame);
+
+        synchronized (this) {
+            try {
+                while (paused && !stopped) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+            paused = false;
+            if (stopped) throw new Stopped();
+        }
+        return site.statement;
+    }
+
+    private static List<Map<String, String>> snapshot(Environment environment) {
+        List<Map<String, String>> scopes = new ArrayList<>();
+        for (Environment env = environment; env != null; env = env.parent()) {
+            Map<String, String> variables = new LinkedHashMap<>();
+            env.variables().forEach((name, value) -> variables.put(name, String.valueOf(value)));
+            scopes.add(variables);
+        }
+        return scopes;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Porównanie różnicowe dla HotScripts: każdy skrypt jest wykonywany przez interpreter i jako
+ * skompilowana klasa (CompiledScript), a wyjście i końcowe zmienne globalne muszą być identyczne.
+ * Skrypty, których klasa Javy nie odtworzyłaby dokładnie, muszą zostać odrzucone przy kompilacji,
+ * żeby executeCode dalej je interpretował. Kod wyjścia 1 przy pierwszej niezgodności
+ */
+public class HotScriptCheck {
+    private static final String[] MATCHING = {
+            """
+            int64 n = 10 ;
+            int64 s = 0 ;
+            for ( int64 i = 0 ; i < n ; i = i + 1 ) { s = s + i * i ; }
+            println ( s ) ;
+            """,
+            """
+            cached fn int64 fib ( int64 n ) { if ( n < 2 ) { return n ; } return fib ( n - 1 ) + fib ( n - 2 ) ; }
+            int64 r = fib ( 40 ) ;
+            println ( r ) ;
+            """,
+            """
+            double d = 1.5 ;
+            string s = "a" ;
+            bool b = false ;
+            int64 k = 0 ;
+            while ( k < 3 ) { d = d * 2.0 ; s = s + "b" ; k = k + 1 ; }
+            if ( k == 3 ) { b = true ; }
+            println ( d ) ;
+            println ( s ) ;
+            println ( b ) ;
+            println ( 7 / 2 ) ;
+            println ( 7.0 / 2.0 ) ;
+            """,
+            """
+            int64 n = 5 ;
+            if ( n > 3 ) { int64 a = 1 ; } else { int64 a = 2 ; }
+            fn int64 f ( int64 x ) { if ( x > 0 ) { return x + a ; } else { return 0 ; } }
+            println ( f ( 2 ) ) ;
+            println ( f ( 0 ) ) ;
+            """,
+            """
+            fn void show ( string label , int64 v ) { print ( label ) ; println ( v ) ; }
+            fn int64 gcd ( int64 a , int64 b ) { while ( b != 0 ) { int64 t = b ; b = a % b ; a = t ; } return a ; }
+            show ( "gcd=" , gcd ( 1071 , 462 ) ) ;
+            { int64 local = 3 ; show ( "local=" , local ) ; }
+            """,
+    };
+
+    // Interpreter zgłasza błąd albo zwraca void tam, gdzie klasa Javy dałaby wartość domyślną
+    private static final String[] REJECTED = {
+            "fn int64 f ( ) { return g ; } println ( f ( ) ) ; int64 g = 5 ;",
+            "fn int64 f ( ) { if ( false ) { return 1 ; } } println ( f ( ) ) ;",
+            "println ( f ( ) ) ; fn int64 f ( ) { return 1 ; }",
+            "int64 n = 5 ; if ( n > 3 ) { int64 a = 1 ; } println ( a ) ;",
+    };
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (int i = 0; i < MATCHING.length; i++) {
+            failures += checkMatching("script " + i, MATCHING[i]);
+        }
+        for (int i = 0; i < REJECTED.length; i++) {
+            failures += checkRejected("rejected " + i, REJECTED[i]);
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static int checkMatching(String name, String code) {
+        ByteArrayOutputStream interpretedOut = new ByteArrayOutputStream();
+        interpreter in = new interpreter();
+        in.setCompileThreshold(0);
+        in.setOutput(new OutputSink(interpretedOut, OutputSink.DEFAULT_BUFFER_SIZE, false));
+        in.executeCode(code);
+        in.flushOutput();
+        Map<String, String> interpretedGlobals = new LinkedHashMap<>();
+        in.getGlobalEnvironment().variables().forEach((key, value) -> interpretedGlobals.put(key, value.toString()));
+
+        StringBuilder compiledOut = new StringBuilder();
+        Map<String, String> compiledGlobals = new LinkedHashMap<>();
+        CompiledScript.compile(code, "Check" + Math.abs(code.hashCode()))
+                .run(compiledOut::append, () -> { }, (key, value) -> compiledGlobals.put(key, String.valueOf(value)));
+
+        String interpreted = interpretedOut.toString(StandardCharsets.UTF_8);
+        if (!interpreted.equals(compiledOut.toString())) {
+            return fail(name, "output differs\n--- interpreted\n" + interpreted + "--- compiled\n" + compiledOut);
+        }
+        if (!interpretedGlobals.equals(compiledGlobals)) {
+            return fail(name, "globals differ: " + interpretedGlobals + " vs " + compiledGlobals);
+        }
+        System.out.println(name + ": OK");
+        return 0;
+    }
+
+    private static int checkRejected(String name, String code) {
+        try {
+            CompiledScript.compile(code, "Check" + Math.abs(code.hashCode()));
+        } catch (RuntimeException e) {
+            System.out.println(name + ": OK (" + e.getMessage() + ")");
+            return 0;
+        }
+        return fail(name, "compiled, but the interpreter behaves differently");
+    }
+
+    private static int fail(String name, String message) {
+        System.out.println(name + ": FAIL - " + message);
+        return 1;
+    }
+}
@@ -0,0 +1,104 @@
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Benchmark arytmetyki int128 (Int128Value) względem BigInteger
+ * Najpierw sprawdza zgodność wyników, potem mierzy pętlę sumy kontrolnej
+ */
+public class Int128Benchmark {
+    private static final BigInteger MOD_128 = BigInteger.ONE.shiftLeft(128);
+    private static final BigInteger MAX_128 = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        verify(200_000);
+
+        // Rozgrzewka JIT
+        for (int i = 0; i < 5; i++) {
+            checksumInt128(iterations / 10);
+            checksumBigInteger(iterations / 10);
+        }
+
+        long start = System.nanoTime();
+        Int128Value a = checksumInt128(iterations);
+        long int128Time = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        BigInteger b = checksumBigInteger(iterations);
+        long bigIntegerTime = System.nanoTime() - start;
+
+        if (!a.toString().equals(b.toString())) {
+            throw new IllegalStateException("Checksum mismatch: " + a + " != " + b);
+        }
+
+        System.out.println("=== int128 checksum benchmark (" + iterations + " iterations) ===");
+        System.out.printf("Int128Value: %8.2f ns/op%n", (double) int128Time / iterations);
+        System.out.printf("BigInteger:  %8.2f ns/op%n", (double) bigIntegerTime / iterations);
+        System.out.printf("Speedup:     %8.2fx%n", (double) bigIntegerTime / int128Time);
+    }
+
+    // ===== SUMA KONTROLNA (mul, add, mod w każdej iteracji) =====
+    private static Int128Value checksumInt128(int iterations) {
+        Int128Value sum = Int128Value.ZERO;
+        Int128Value prime = Int128Value.of(2305843009213693951L);
+        Int128Value factor = Int128Value.of(6364136223846793005L);
+        for (int i = 0; i < iterations; i++) {
+            sum = sum.mul(factor).add(Int128Value.of(i)).mod(prime);
+        }
+        return sum;
+    }
+
+    private static BigInteger checksumBigInteger(int iterations) {
+        BigInteger sum = BigInteger.ZERO;
+        BigInteger prime = BigInteger.valueOf(2305843009213693951L);
+        BigInteger factor = BigInteger.valueOf(6364136223846793005L);
+        for (int i = 0; i < iterations; i++) {
+            sum = wrap(sum.multiply(factor).add(BigInteger.valueOf(i))).remainder(prime);
+        }
+        return sum;
+    }
+
+    // ===== WERYFIKACJA =====
+    private static void verify(int samples) {
+        Random random = new Random(42);
+        for (int i = 0; i < samples; i++) {
+            Int128Value x = randomValue(random);
+            Int128Value y = randomValue(random);
+            BigInteger bx = new BigInteger(x.toString());
+            BigInteger by = new BigInteger(y.toString());
+
+            check("add", x.add(y), wrap(bx.add(by)));
+            check("sub", x.sub(y), wrap(bx.subtract(by)));
+            check("mul", x.mul(y), wrap(bx.multiply(by)));
+            if (!y.isZero()) {
+                check("div", x.div(y), wrap(bx.divide(by)));
+                check("mod", x.mod(y), wrap(bx.remainder(by)));
+            }
+            if (Integer.signum(x.compareTo(y)) != bx.compareTo(by)) {
+                throw new IllegalStateException("compare mismatch for " + x + ", " + y);
+            }
+        }
+    }
+
+    private static Int128Value randomValue(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> Int128Value.of(random.nextLong());
+            case 1 -> Int128Value.of(random.nextInt(1000) - 500);
+            case 2 -> new Int128Value(0, random.nextLong());
+            default -> new Int128Value(random.nextLong(), random.nextLong());
+        };
+    }
+
+    private static void check(String op, Int128Value actual, BigInteger expected) {
+        if (!actual.toString().equals(expected.toString())) {
+            throw new IllegalStateException(op + ": expected " + expected + " but got " + actual);
+        }
+    }
+
+    // Redukcja do zakresu int128 (zawijanie jak w uzupełnieniu do dwóch)
+    private static BigInteger wrap(BigInteger value) {
+        BigInteger r = value.mod(MOD_128);
+        return r.compareTo(MAX_128) > 0 ? r.subtract(MOD_128) : r;
+    }
+}
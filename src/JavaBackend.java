@@ -0,0 +1,1056 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+// ===== TRANSPILACJA DO JAVY =====
+// Program -> źródło jednej klasy Javy (Runnable): funkcja najwyższego poziomu to metoda,
+// zmienne globalne to pola, reszta kodu najwyższego poziomu trafia do run(). Każda instancja
+// to osobne wykonanie z własnymi globals; wyjście idzie przez przekazane Consumer/Runnable.
+// Zmienne mają typy Javy z deklaracji (int32/int64/long -> long, double/float -> double,
+// bool -> boolean, string -> String), więc wartości są statycznie typowane i każda ma dokładnie
+// typ zmiennej; niezgodność (także int do double) jest błędem kompilacji. Interpreter trzyma
+// w zmiennej double nadal int (inny wynik wypisania i dzielenia), więc poszerzanie zmieniłoby wynik.
+// Zasięgi jak w interpreterze: if/while nie tworzą zasięgu (ich deklaracje są wyciągane
+// do zasięgu nadrzędnego), blok, for i funkcja tworzą. Operatory zachowują semantykę
+// interpretera (&&/|| liczą obie strony, == na double z tolerancją, dzielenie przez zero
+// to błąd wykonania). Nieobsługiwane: int128, spawn/await, kanały, parallel for,
+// zagnieżdżone deklaracje funkcji. Odrzucane są też programy, w których klasa Javy zachowałaby
+// się inaczej niż interpreter: odczyt lub przypisanie zmiennej, która w tym miejscu może nie być
+// jeszcze zadeklarowana (pole ma wartość domyślną, interpreter zgłasza Undefined variable),
+// wywołanie funkcji przed jej deklaracją oraz funkcja z typem wyniku, która może dojść do końca
+// ciała bez return (interpreter zwraca void). Funkcja widzi tylko zmienne globalne i funkcje
+// zadeklarowane na pewno przed każdym wywołaniem funkcji z run().
+final class JavaTranspiler {
+    enum Type {
+        LONG("long", "Long", "0L"),
+        DOUBLE("double", "Double", "0.0"),
+        BOOL("boolean", "Boolean", "false"),
+        STRING("String", "String", "\"\""),
+        VOID("void", null, null);
+
+        final String java;
+        final String boxed;
+        final String defaultValue;
+
+        Type(String java, String boxed, String defaultValue) {
+            this.java = java;
+            this.boxed = boxed;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    // Wyrażenie Javy z typem
+    private static final class Typed {
+        final String code;
+        final Type type;
+
+        Typed(String code, Type type) {
+            this.code = code;
+            this.type = type;
+        }
+    }
+
+    private static final class Variable {
+        final String javaName;
+        final Type type;
+
+        Variable(String javaName, Type type) {
+            this.javaName = javaName;
+            this.type = type;
+        }
+    }
+
+    private static final class Signature {
+        final FunctionDeclaration declaration;
+        final String javaName;
+        final Type returnType;
+        final List<Type> parameterTypes = new ArrayList<>();
+
+        Signature(FunctionDeclaration declaration, Type returnType) {
+            this.declaration = declaration;
+            this.javaName = "f_" + sanitize(declaration.name);
+            this.returnType = returnType;
+        }
+    }
+
+    // Wpisów na tablicę wyników funkcji (rząd wielkości domyślnych 16 MiB interpretera)
+    private static final int MEMO_ENTRIES = 1 << 18;
+
+    private final String className;
+    private final StringBuilder out = new StringBuilder();
+    private int indent;
+    private final Map<String, Variable> globals = new LinkedHashMap<>();
+    private final Map<String, Signature> functions = new LinkedHashMap<>();
+    private final ArrayDeque<Map<String, Variable>> scopes = new ArrayDeque<>();
+    private int scopeCount;
+    // Funkcja, której ciało jest generowane; null w run()
+    private Signature function;
+    // Zmienne i funkcje na pewno zadeklarowane w bieżącym miejscu generowanego kodu
+    private Set<Variable> declared = new HashSet<>();
+    private final Set<String> declaredFunctions = new HashSet<>();
+    // Część wspólna zadeklarowanych w miejscach wywołań funkcji w run(); null - brak wywołań
+    private Set<Variable> globalsAtCalls;
+    private Set<String> functionsAtCalls;
+
+    private JavaTranspiler(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Źródło klasy className z metodą main uruchamiającą program; wynik jest taki jak w interpreterze
+     * @throws RuntimeException gdy program używa konstrukcji, których nie da się przetłumaczyć,
+     *         albo klasa zachowałaby się inaczej niż interpreter (patrz opis klasy)
+     */
+    static String transpile(Program program, String className) {
+        return transpile(program, className, new LinkedHashMap<>());
+    }
+
+    // Jak wyżej; globalFields dostaje nazwy zmiennych globalnych -> pola klasy, w kolejności deklaracji
+    static String transpile(Program program, String className, Map<String, String> globalFields) {
+        JavaTranspiler transpiler = new JavaTranspiler(className);
+        transpiler.emitClass(program);
+        transpiler.globals.forEach((name, variable) -> globalFields.put(name, variable.javaName));
+        return transpiler.out.toString();
+    }
+
+    // Nazwa klasy z nazwy pliku: app.cl -> App
+    static String classNameFor(String path) {
+        String name = Path.of(path).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '_') sb.append(c);
+        }
+        if (sb.isEmpty() || !Character.isJavaIdentifierStart(sb.charAt(0))) sb.insert(0, "Program");
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    // ===== KLASA =====
+    private void emitClass(Program program) {
+        PurityAnalysis.analyze(program);
+        for (Statement s : program.statements) {
+            if (s instanceof FunctionDeclaration f) declareFunction(f);
+        }
+        collectDeclarations(program.statements, globals, "g_");
+
+        line("// Wygenerowane przez CodeLanguage z programu .cl");
+        line("public final class " + className + " implements Runnable {");
+        indent++;
+        line("private final java.util.function.Consumer<String> out;");
+        line("private final Runnable flusher;");
+        for (Variable global : globals.values()) {
+            line("private " + global.type.java + " " + global.javaName + " = " + global.type.defaultValue + ";");
+        }
+        line("");
+
+        line("public " + className + "(java.util.function.Consumer<String> out, Runnable flusher) {");
+        line("    this.out = out;");
+        line("    this.flusher = flusher;");
+        line("}");
+        line("");
+
+        line("public static void main(String[] args) {");
+        line("    java.io.Writer writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(");
+        line("            new java.io.FileOutputStream(java.io.FileDescriptor.out), java.nio.charset.StandardCharsets.UTF_8), 8192);");
+        line("    " + className + " program = new " + className + "(text -> write(writer, text), () -> flush(writer));");
+        line("    try {");
+        line("        program.run();");
+        line("    } catch (RuntimeException e) {");
+        line("        program.flush();");
+        line("        System.err.println(\"Runtime Error: \" + e.getMessage());");
+        line("        System.exit(1);");
+        line("    }");
+        line("    program.flush();");
+        line("}");
+        line("");
+
+        line("@Override");
+        line("public void run() {");
+        indent++;
+        for (Statement s : program.statements) {
+            if (s instanceof FunctionDeclaration f) {
+                declaredFunctions.add(f.name);
+                continue;
+            }
+            if (statement(s)) break;
+        }
+        indent--;
+        line("}");
+
+        for (Signature signature : functions.values()) {
+            line("");
+            emitFunction(signature);
+        }
+
+        line("");
+        emitHelpers();
+        indent--;
+        line("}");
+    }
+
+    private void declareFunction(FunctionDeclaration f) {
+        if (functions.containsKey(f.name)) {
+            throw unsupported("function " + f.name + " is declared more than once");
+        }
+        Signature signature = new Signature(f, typeOf(f.returnType, "return type of " + f.name));
+        for (Parameter p : f.parameters) {
+            Type type = typeOf(p.type, "parameter " + p.name);
+            if (type == Type.VOID) throw unsupported("void parameter " + p.name);
+            signature.parameterTypes.add(type);
+        }
+        functions.put(f.name, signature);
+    }
+
+    private void emitFunction(Signature signature) {
+        FunctionDeclaration f = signature.declaration;
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        Map<String, Variable> scope = new LinkedHashMap<>();
+        for (int i = 0; i < f.parameters.size(); i++) {
+            Parameter p = f.parameters.get(i);
+            Variable variable = new Variable("p_" + sanitize(p.name), signature.parameterTypes.get(i));
+            scope.put(p.name, variable);
+            if (i > 0) {
+                parameters.append(", ");
+                arguments.append(", ");
+            }
+            parameters.append(variable.type.java).append(' ').append(variable.javaName);
+            arguments.append(variable.javaName);
+        }
+
+        // cached fn i funkcje czyste: opakowanie z tablicą wyników, jak w interpreterze
+        boolean memoized = (f.cached || f.pure) && signature.returnType != Type.VOID;
+        String header = "private " + signature.returnType.java + " ";
+        if (memoized) {
+            String memo = "m_" + sanitize(f.name);
+            line("private final Memo " + memo + " = new Memo();");
+            line("");
+            line(header + signature.javaName + "(" + parameters + ") {");
+            line("    java.util.List<Object> key = java.util.List.of(" + arguments + ");");
+            line("    Object hit = " + memo + ".get(key);");
+            line("    if (hit != null) return (" + signature.returnType.boxed + ") hit;");
+            line("    " + signature.returnType.java + " result = b_" + sanitize(f.name) + "(" + arguments + ");");
+            line("    " + memo + ".put(key, result);");
+            line("    return result;");
+            line("}");
+            line("");
+            line(header + "b_" + sanitize(f.name) + "(" + parameters + ") {");
+        } else {
+            line(header + signature.javaName + "(" + parameters + ") {");
+        }
+
+        indent++;
+        function = signature;
+        scopes.push(scope);
+        declared = new HashSet<>(globalsAtCalls != null ? globalsAtCalls : globals.values());
+        for (Parameter p : f.parameters) declared.add(scope.get(p.name));
+        List<Statement> body = f.body != null ? f.body : f.lazyBody.parse();
+        collectDeclarations(body, scope, "v" + (scopeCount++) + "_");
+        declareLocals(scope);
+        boolean returns = statements(body);
+        if (!returns && signature.returnType != Type.VOID) {
+            throw unsupported("function " + f.name + " may end without returning a value");
+        }
+        scopes.pop();
+        function = null;
+        indent--;
+        line("}");
+    }
+
+    private void emitHelpers() {
+        line("private void print(String text) {");
+        line("    out.accept(text);");
+        line("}");
+        line("");
+        line("private void flush() {");
+        line("    flusher.run();");
+        line("}");
+        line("");
+        line("private static void write(java.io.Writer writer, String text) {");
+        line("    try {");
+        line("        writer.write(text);");
+        line("    } catch (java.io.IOException e) {");
+        line("        throw new java.io.UncheckedIOException(e);");
+        line("    }");
+        line("}");
+        line("");
+        line("private static void flush(java.io.Writer writer) {");
+        line("    try {");
+        line("        writer.flush();");
+        line("    } catch (java.io.IOException e) {");
+        line("        throw new java.io.UncheckedIOException(e);");
+        line("    }");
+        line("}");
+        line("");
+        line("private static long div(long a, long b) {");
+        line("    if (b == 0) throw new ArithmeticException(\"Division by zero\");");
+        line("    return a / b;");
+        line("}");
+        line("");
+        line("private static double div(double a, double b) {");
+        line("    if (b == 0) throw new ArithmeticException(\"Division by zero\");");
+        line("    return a / b;");
+        line("}");
+        line("");
+        // Jak Builtins.pow w interpreterze
+        line("private static long pow(long base, long exponent) {");
+        line("    if (exponent < 0) {");
+        line("        if (base == 0) throw new ArithmeticException(\"Division by zero\");");
+        line("        if (base == 1) return 1;");
+        line("        if (base == -1) return (exponent & 1) == 0 ? 1 : -1;");
+        line("        return 0;");
+        line("    }");
+        line("    long result = 1;");
+        line("    while (exponent != 0) {");
+        line("        if ((exponent & 1) != 0) result *= base;");
+        line("        base *= base;");
+        line("        exponent >>= 1;");
+        line("    }");
+        line("    return result;");
+        line("}");
+        line("");
+        line("private static boolean eq(double a, double b) {");
+        line("    return Math.abs(a - b) < 0.0000001;");
+        line("}");
+        line("");
+        // Warunek pętli nigdy nie jest stałą dla javac, więc kod za while nie bywa \"unreachable\"
+        line("private static boolean cond(boolean value) {");
+        line("    return value;");
+        line("}");
+        line("");
+        line("private static void ignore(Object value) {");
+        line("}");
+        line("");
+        // Limit wpisów zamiast limitu MiB interpretera; najstarsze wyniki są usuwane
+        line("private static final class Memo extends java.util.LinkedHashMap<java.util.List<Object>, Object> {");
+        line("    @Override");
+        line("    protected boolean removeEldestEntry(java.util.Map.Entry<java.util.List<Object>, Object> eldest) {");
+        line("        return size() > " + MEMO_ENTRIES + ";");
+        line("    }");
+        line("}");
+    }
+
+    // ===== ZASIĘGI =====
+    // Deklaracje z listy oraz z zagnieżdżonych if/while (nie tworzą zasięgu) trafiają do scope
+    private void collectDeclarations(List<Statement> statements, Map<String, Variable> scope, String prefix) {
+        if (statements == null) return;
+        for (Statement s : statements) {
+            if (s instanceof VariableDeclaration d) {
+                Type type = typeOf(d.type, "variable " + d.name);
+                if (type == Type.VOID) throw unsupported("void variable " + d.name);
+                Variable existing = scope.get(d.name);
+                if (existing == null) {
+                    scope.put(d.name, new Variable(prefix + sanitize(d.name), type));
+                } else if (existing.type != type) {
+                    throw unsupported("variable " + d.name + " is redeclared with a different type");
+                }
+            } else if (s instanceof IfStatement i) {
+                collectDeclarations(i.thenBranch, scope, prefix);
+                collectDeclarations(i.elseBranch, scope, prefix);
+            } else if (s instanceof WhileStatement w) {
+                collectDeclarations(w.body, scope, prefix);
+            }
+        }
+    }
+
+    private void declareLocals(Map<String, Variable> scope) {
+        for (Variable v : scope.values()) {
+            if (v.javaName.startsWith("p_")) continue;
+            line(v.type.java + " " + v.javaName + " = " + v.type.defaultValue + ";");
+        }
+    }
+
+    private Map<String, Variable> openScope(List<Statement> statements, Statement initializer) {
+        Map<String, Variable> scope = new LinkedHashMap<>();
+        String prefix = "v" + (scopeCount++) + "_";
+        if (initializer != null) collectDeclarations(List.of(initializer), scope, prefix);
+        collectDeclarations(statements, scope, prefix);
+        scopes.push(scope);
+        return scope;
+    }
+
+    private Variable lookup(String name) {
+        for (Map<String, Variable> scope : scopes) {
+            Variable v = scope.get(name);
+            if (v != null) return v;
+        }
+        Variable global = globals.get(name);
+        if (global == null) throw unsupported("undefined variable " + name);
+        return global;
+    }
+
+    // Zmienna, której wartość kod czyta lub zmienia; musi być już na pewno zadeklarowana
+    private Variable declaredVariable(String name) {
+        Variable v = lookup(name);
+        if (!declared.contains(v)) throw unsupported("variable " + name + " may be used before its declaration");
+        return v;
+    }
+
+    // ===== INSTRUKCJE =====
+    // Zwracają true, gdy instrukcja nie może zakończyć się normalnie (return); dalszy kod listy
+    // jest martwy i nie jest generowany, bo javac odrzuciłby go jako unreachable
+    private boolean statements(List<Statement> statements) {
+        for (Statement s : statements) {
+            if (statement(s)) return true;
+        }
+        return false;
+    }
+
+    private boolean statement(Statement s) {
+        if (s instanceof VariableDeclaration d) {
+            Variable v = lookup(d.name);
+            String value = d.initializer == null ? v.type.defaultValue : convert(expression(d.initializer), v.type, d.name);
+            line(v.javaName + " = " + value + ";");
+            declared.add(v);
+            return false;
+        }
+        if (s instanceof Assignment a) {
+            Variable v = declaredVariable(a.name);
+            line(v.javaName + " = " + convert(expression(a.value), v.type, a.name) + ";");
+            return false;
+        }
+        if (s instanceof IfStatement i) {
+            line("if (" + truthy(expression(i.condition)) + ") {");
+            Set<Variable> before = new HashSet<>(declared);
+            boolean thenReturns = block(i.thenBranch);
+            if (i.elseBranch == null) {
+                line("}");
+                declared = before;
+                return false;
+            }
+            Set<Variable> afterThen = declared;
+            declared = new HashSet<>(before);
+            line("} else {");
+            boolean elseReturns = block(i.elseBranch);
+            line("}");
+            // Dalej idzie tylko gałąź bez return; po obu - to, co zadeklarowały obie
+            if (elseReturns) declared = afterThen;
+            else if (!thenReturns) declared.retainAll(afterThen);
+            return thenReturns && elseReturns;
+        }
+        if (s instanceof WhileStatement w) {
+            line("while (cond(" + truthy(expression(w.condition)) + ")) {");
+            Set<Variable> before = new HashSet<>(declared);
+            block(w.body);
+            declared = before;
+            line("}");
+            return false;
+        }
+        if (s instanceof ParallelForStatement) throw unsupported("parallel for");
+        if (s instanceof ForStatement f) {
+            Set<Variable> before = new HashSet<>(declared);
+            line("{");
+            indent++;
+            declareLocals(openScope(f.body, f.initializer));
+            if (f.initializer != null) statement(f.initializer);
+            String condition = f.condition == null ? "true" : truthy(expression(f.condition));
+            line("while (cond(" + condition + ")) {");
+            indent++;
+            if (!statements(f.body) && f.increment != null) statement(f.increment);
+            indent--;
+            line("}");
+            scopes.pop();
+            declared = before;
+            indent--;
+            line("}");
+            return false;
+        }
+        if (s instanceof ReturnStatement r) {
+            if (function == null) throw unsupported("return outside a function");
+            Type type = function.returnType;
+            if (type == Type.VOID) {
+                if (r.value != null) throw unsupported("void function " + function.declaration.name + " returns a value");
+                line("return;");
+            } else {
+                if (r.value == null) throw unsupported("function " + function.declaration.name + " returns no value");
+                line("return " + convert(expression(r.value), type, "return value") + ";");
+            }
+            return true;
+        }
+        if (s instanceof ExpressionStatement e) {
+            if (e.expression instanceof FunctionCall call) {
+                callStatement(call);
+            } else {
+                line("ignore(" + value(expression(e.expression)).code + ");");
+            }
+            return false;
+        }
+        if (s instanceof BlockStatement b) {
+            Set<Variable> before = new HashSet<>(declared);
+            line("{");
+            indent++;
+            declareLocals(openScope(b.statements, null));
+            boolean returns = statements(b.statements);
+            scopes.pop();
+            declared = before;
+            indent--;
+            line("}");
+            return returns;
+        }
+        if (s instanceof FunctionDeclaration f) throw unsupported("nested declaration of function " + f.name);
+        if (s instanceof ImportStatement i) throw unsupported("import \"" + i.path + "\"");
+        throw unsupported(s.getClass().getSimpleName());
+    }
+
+    // Ciało if/while w tym samym zasięgu (deklaracje są już wyciągnięte wyżej)
+    private boolean block(List<Statement> statements) {
+        indent++;
+        boolean returns = statements(statements);
+        indent--;
+        return returns;
+    }
+
+    private void callStatement(FunctionCall call) {
+        switch (call.functionName) {
+            case "print", "println" -> {
+                for (Expression argument : call.arguments) {
+                    line("print(String.valueOf(" + value(expression(argument)).code + "));");
+                }
+                if (call.functionName.equals("println")) line("print(System.lineSeparator());");
+            }
+            case "flush" -> {
+                if (!call.arguments.isEmpty()) throw unsupported("flush expects 0 arguments");
+                line("flush();");
+            }
+            default -> line(call(call).code + ";");
+        }
+    }
+
+    // ===== WYRAŻENIA =====
+    private Typed expression(Expression e) {
+        if (e instanceof NumberLiteral n) return number(n.value);
+        if (e instanceof StringLiteral s) return new Typed("\"" + escape(s.value) + "\"", Type.STRING);
+        if (e instanceof BooleanLiteral b) return new Typed(String.valueOf(b.value), Type.BOOL);
+        if (e instanceof Identifier id) {
+            Variable v = declaredVariable(id.name);
+            return new Typed(v.javaName, v.type);
+        }
+        if (e instanceof BinaryOperation b) return binary(b.operator, expression(b.left), expression(b.right));
+        if (e instanceof UnaryOperation u) {
+            Typed operand = expression(u.operand);
+            if (u.operator == Lexer.TokenType.BANG) return new Typed("(!" + truthy(operand) + ")", Type.BOOL);
+            if (!isNumeric(operand.type)) throw unsupported("unary minus on " + operand.type.java);
+            return new Typed("(-" + operand.code + ")", operand.type);
+        }
+        if (e instanceof FunctionCall c) return call(c);
+        if (e instanceof SpawnExpression || e instanceof AwaitExpression) throw unsupported("spawn/await");
+        throw unsupported(e.getClass().getSimpleName());
+    }
+
+    private Typed number(String text) {
+        if (text.contains(".")) {
+            return new Typed(text.startsWith("-") ? "(" + text + ")" : text, Type.DOUBLE);
+        }
+        try {
+            Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw unsupported("int128 literal " + text);
+        }
+        return new Typed(text.startsWith("-") ? "(" + text + "L)" : text + "L", Type.LONG);
+    }
+
+    private Typed binary(Lexer.TokenType operator, Typed left, Typed right) {
+        value(left);
+        value(right);
+        boolean ints = left.type == Type.LONG && right.type == Type.LONG;
+        boolean numbers = isNumeric(left.type) && isNumeric(right.type);
+        String l = left.code;
+        String r = right.code;
+        switch (operator) {
+            case PLUS -> {
+                if (numbers) return new Typed("(" + l + " + " + r + ")", ints ? Type.LONG : Type.DOUBLE);
+                if (left.type == Type.STRING || right.type == Type.STRING) {
+                    return new Typed("(" + stringOf(left) + " + " + stringOf(right) + ")", Type.STRING);
+                }
+            }
+            case MINUS, STAR -> {
+                String op = operator == Lexer.TokenType.MINUS ? " - " : " * ";
+                if (numbers) return new Typed("(" + l + op + r + ")", ints ? Type.LONG : Type.DOUBLE);
+            }
+            case SLASH -> {
+                if (ints) return new Typed("div(" + l + ", " + r + ")", Type.LONG);
+                if (numbers) return new Typed("div((double) " + l + ", (double) " + r + ")", Type.DOUBLE);
+            }
+            case MOD -> {
+                if (ints) return new Typed("(" + l + " % " + r + ")", Type.LONG);
+            }
+            case EQUAL_EQUAL, BANG_EQUAL -> {
+                String test = equality(left, right);
+                if (test != null) {
+                    return new Typed(operator == Lexer.TokenType.EQUAL_EQUAL ? test : "(!" + test + ")", Type.BOOL);
+                }
+            }
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> {
+                if (numbers) return new Typed("(" + l + " " + symbol(operator) + " " + r + ")", Type.BOOL);
+            }
+            case AND -> {
+                return new Typed("(" + truthy(left) + " & " + truthy(right) + ")", Type.BOOL);
+            }
+            case OR -> {
+                return new Typed("(" + truthy(left) + " | " + truthy(right) + ")", Type.BOOL);
+            }
+            default -> { }
+        }
+        throw unsupported("operator " + operator + " on " + left.type.java + " and " + right.type.java);
+    }
+
+    private String equality(Typed left, Typed right) {
+        if (left.type == Type.LONG && right.type == Type.LONG) return "(" + left.code + " == " + right.code + ")";
+        if (isNumeric(left.type) && isNumeric(right.type)) return "eq(" + left.code + ", " + right.code + ")";
+        if (left.type == Type.BOOL && right.type == Type.BOOL) return "(" + left.code + " == " + right.code + ")";
+        if (left.type == Type.STRING && right.type == Type.STRING) return left.code + ".equals(" + right.code + ")";
+        return null;
+    }
+
+    private Typed call(FunctionCall call) {
+        switch (call.functionName) {
+            case "print", "println", "flush" -> throw unsupported(call.functionName + " used as a value");
+            case "channel", "send", "recv" -> throw unsupported("channels");
+            default -> { }
+        }
+        Signature signature = functions.get(call.functionName);
+        if (signature == null) return builtin(call);
+        checkDeclared(call.functionName);
+        if (call.arguments.size() != signature.parameterTypes.size()) {
+            throw unsupported(call.functionName + " expects " + signature.parameterTypes.size()
+                    + " arguments but got " + call.arguments.size());
+        }
+        StringBuilder code = new StringBuilder(signature.javaName).append('(');
+        for (int i = 0; i < call.arguments.size(); i++) {
+            if (i > 0) code.append(", ");
+            String what = "argument " + (i + 1) + " of " + call.functionName;
+            code.append(convert(expression(call.arguments.get(i)), signature.parameterTypes.get(i), what));
+        }
+        return new Typed(code.append(')').toString(), signature.returnType);
+    }
+
+    // W run() funkcja musi być już zadeklarowana, a stan z miejsca wywołania zawęża to, co widzą
+    // ciała funkcji; w ciele funkcji - zadeklarowana przed każdym wywołaniem z run()
+    private void checkDeclared(String name) {
+        if (function != null) {
+            if (functionsAtCalls != null && !functionsAtCalls.contains(name)) {
+                throw unsupported("function " + name + " may be called before its declaration");
+            }
+            return;
+        }
+        if (!declaredFunctions.contains(name)) throw unsupported("function " + name + " is called before its declaration");
+        if (globalsAtCalls == null) {
+            globalsAtCalls = new HashSet<>(declared);
+            functionsAtCalls = new HashSet<>(declaredFunctions);
+        } else {
+            globalsAtCalls.retainAll(declared);
+            functionsAtCalls.retainAll(declaredFunctions);
+        }
+    }
+
+    // Wbudowane funkcje liczb (Math, te same typy wyniku co w interpreterze) oraz len i str;
+    // napisowe z błędami wykonania (substr, parseInt...) zostają w interpreterze
+    private Typed builtin(FunctionCall call) {
+        NativeFunction builtin = Builtins.get(call.symbol);
+        if (builtin == null) throw unsupported("undefined function " + call.functionName);
+        RuntimeError arity = builtin.arityError(call.arguments.size());
+        if (arity != null) throw unsupported(arity.getMessage());
+        List<Typed> arguments = new ArrayList<>();
+        boolean ints = true;
+        boolean numbers = true;
+        for (Expression argument : call.arguments) {
+            Typed typed = value(expression(argument));
+            arguments.add(typed);
+            ints &= typed.type == Type.LONG;
+            numbers &= isNumeric(typed.type);
+        }
+        Typed a = arguments.get(0);
+        Typed b = arguments.size() > 1 ? arguments.get(1) : null;
+        String name = call.functionName;
+        switch (name) {
+            case "abs" -> {
+                if (numbers) return new Typed("Math.abs(" + a.code + ")", a.type);
+            }
+            case "min", "max" -> {
+                if (numbers) return new Typed("Math." + name + "(" + a.code + ", " + b.code + ")", ints ? Type.LONG : Type.DOUBLE);
+            }
+            case "pow" -> {
+                if (ints) return new Typed("pow(" + a.code + ", " + b.code + ")", Type.LONG);
+                if (numbers) return new Typed("Math.pow(" + a.code + ", " + b.code + ")", Type.DOUBLE);
+            }
+            case "sqrt", "exp", "log", "sin", "cos", "tan" -> {
+                if (numbers) return new Typed("Math." + name + "(" + a.code + ")", Type.DOUBLE);
+            }
+            case "floor", "ceil" -> {
+                if (ints) return a;
+                if (numbers) return new Typed("((long) Math." + name + "(" + a.code + "))", Type.LONG);
+            }
+            case "round" -> {
+                if (ints) return a;
+                if (numbers) return new Typed("Math.round(" + a.code + ")", Type.LONG);
+            }
+            case "len" -> {
+                if (a.type == Type.STRING) return new Typed("((long) " + a.code + ".length())", Type.LONG);
+            }
+            case "str" -> {
+                return new Typed(stringOf(a), Type.STRING);
+            }
+            default -> { }
+        }
+        StringBuilder types = new StringBuilder();
+        for (Typed argument : arguments) {
+            if (!types.isEmpty()) types.append(", ");
+            types.append(argument.type.java);
+        }
+        throw unsupported("builtin " + name + "(" + types + ")");
+    }
+
+    // ===== KONWERSJE =====
+    private String convert(Typed value, Type target, String what) {
+        value(value);
+        if (value.type == target) return value.code;
+        throw unsupported("cannot convert " + value.type.java + " to " + target.java + " in " + what);
+    }
+
+    private String truthy(Typed value) {
+        return switch (value(value).type) {
+            case BOOL -> value.code;
+            case LONG -> "(" + value.code + " != 0L)";
+            case DOUBLE -> "(" + value.code + " != 0.0)";
+            case STRING -> "(!" + value.code + ".isEmpty())";
+            case VOID -> throw unsupported("void value");
+        };
+    }
+
+    // Konkatenacja: pierwszy operand zawsze jako String, żeby + nie dodało liczb
+    private String stringOf(Typed value) {
+        return value.type == Type.STRING ? value.code : "String.valueOf(" + value.code + ")";
+    }
+
+    private Typed value(Typed value) {
+        if (value.type == Type.VOID) throw unsupported("void value used in an expression");
+        return value;
+    }
+
+    private static boolean isNumeric(Type type) {
+        return type == Type.LONG || type == Type.DOUBLE;
+    }
+
+    private static String symbol(Lexer.TokenType operator) {
+        return switch (operator) {
+            case GREATER -> ">";
+            case GREATER_EQUAL -> ">=";
+            case LESS -> "<";
+            default -> "<=";
+        };
+    }
+
+    private static Type typeOf(Lexer.TokenType type, String what) {
+        if (type == null) throw unsupported("untyped " + what);
+        return switch (type) {
+            case INT32, INT64, LONG -> Type.LONG;
+            case DOUBLE, FLOAT -> Type.DOUBLE;
+            case BOOL_TYPE -> Type.BOOL;
+            case STRING_TYPE -> Type.STRING;
+            case VOID -> Type.VOID;
+            default -> throw unsupported(type + " " + what);
+        };
+    }
+
+    // ===== POMOCNICZE =====
+    // Identyfikatory języka to dowolne słowa bez białych znaków; w Javie zostają litery, cyfry i _
+    private static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) sb.append(c);
+            else sb.append('_').append(Integer.toHexString(c)).append('_');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static RuntimeException unsupported(String what) {
+        return new RuntimeException("Cannot compile: " + what);
+    }
+
+    private void line(String text) {
+        if (!text.isEmpty()) out.append("    ".repeat(indent)).append(text);
+        out.append('\n');
+    }
+}
+
+// ===== KOMPILACJA W PAMIĘCI =====
+// Źródło Javy -> bajty klas przez javax.tools (kompilator z JDK), bez plików tymczasowych
+final class JavaClassCompiler {
+    private JavaClassCompiler() {}
+
+    /**
+     * Kompiluje jedną klasę; zwraca bajty wszystkich powstałych klas (nazwa binarna -> class file)
+     * @throws RuntimeException gdy brak kompilatora (uruchomienie na JRE) albo źródło ma błędy
+     */
+    static Map<String, byte[]> compile(String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("Java compiler not available (run CodeLanguage on a JDK, not a JRE)");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        classes.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        List<String> options = List.of("-proc:none", "-g:source,lines", "-Xlint:none");
+        boolean ok = compiler.getTask(null, fileManager, diagnostics, options, null, List.of(unit)).call();
+        if (!ok) {
+            StringBuilder message = new StringBuilder("Generated Java failed to compile:");
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                if (d.getKind() == Diagnostic.Kind.ERROR) {
+                    message.append("\n  line ").append(d.getLineNumber()).append(": ").append(d.getMessage(null));
+                }
+            }
+            throw new RuntimeException(message.toString());
+        }
+
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        classes.forEach((name, bytes) -> result.put(name, bytes.toByteArray()));
+        return result;
+    }
+}
+
+// ===== KOMPILACJA AOT DO JAR =====
+final class AotCompiler {
+    private AotCompiler() {}
+
+    /**
+     * Tłumaczy program do Javy, kompiluje i zapisuje wykonywalny JAR (Main-Class = className).
+     * JAR zawiera tylko wygenerowane klasy - do uruchomienia nie potrzebuje interpretera
+     */
+    static void compileToJar(Program program, String className, Path jar) throws IOException {
+        String source = JavaTranspiler.transpile(program, className);
+        Map<String, byte[]> classes = JavaClassCompiler.compile(className, source);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+        manifest.getMainAttributes().put(new Attributes.Name("Created-By"), "CodeLanguage --compile");
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+}
+
+// ===== GORĄCE SKRYPTY =====
+// Klasy z JavaClassCompiler ładowane prosto z bajtów
+final class InMemoryClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+
+    InMemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) throw new ClassNotFoundException(name);
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
+
+// Program skompilowany do klasy Javy; każde uruchomienie to nowa instancja z własnymi globals.
+// Po wykonaniu wartości globals i deklaracje funkcji wracają do interpretera (executeCode)
+final class CompiledScript {
+    private final Constructor<? extends Runnable> constructor;
+    // Nazwa zmiennej globalnej -> pole klasy
+    private final Map<String, Field> globals;
+    private final List<FunctionDeclaration> functions;
+
+    private CompiledScript(Constructor<? extends Runnable> constructor, Map<String, Field> globals,
+                           List<FunctionDeclaration> functions) {
+        this.constructor = constructor;
+        this.globals = globals;
+        this.functions = functions;
+    }
+
+    /**
+     * Parsuje, tłumaczy i kompiluje źródło do klasy załadowanej we własnym class loaderze
+     * @throws RuntimeException gdy programu nie da się przetłumaczyć albo skompilować
+     */
+    static CompiledScript compile(String code, String className) {
+        Program program = new Parser(Token.tokenize(code)).parse();
+        Map<String, String> globalFields = new LinkedHashMap<>();
+        String source = JavaTranspiler.transpile(program, className, globalFields);
+        ClassLoader loader = new InMemoryClassLoader(JavaClassCompiler.compile(className, source),
+                CompiledScript.class.getClassLoader());
+        try {
+            Class<? extends Runnable> type = loader.loadClass(className).asSubclass(Runnable.class);
+            Map<String, Field> globals = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : globalFields.entrySet()) {
+                Field field = type.getDeclaredField(entry.getValue());
+                field.setAccessible(true);
+                globals.put(entry.getKey(), field);
+            }
+            List<FunctionDeclaration> functions = new ArrayList<>();
+            for (Statement s : program.statements) {
+                if (s instanceof FunctionDeclaration f) functions.add(f);
+            }
+            return new CompiledScript(type.getConstructor(Consumer.class, Runnable.class), globals, functions);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled script " + className, e);
+        }
+    }
+
+    /**
+     * Uruchamia program; globals dostaje końcowe wartości zmiennych globalnych (Long, Double,
+     * Boolean, String) także wtedy, gdy wykonanie zakończyło się błędem
+     */
+    void run(Consumer<String> out, Runnable flush, BiConsumer<String, Object> globals) {
+        Runnable program;
+        try {
+            program = constructor.newInstance(out, flush);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate compiled script", e);
+        }
+        try {
+            program.run();
+        } finally {
+            for (Map.Entry<String, Field> entry : this.globals.entrySet()) {
+                try {
+                    globals.accept(entry.getKey(), entry.getValue().get(program));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Cannot read compiled global " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    List<FunctionDeclaration> functions() {
+        return functions;
+    }
+}
+
+/**
+ * Źródła wykonywane wielokrotnie przez interpreter.executeCode. Po threshold wykonaniach tego
+ * samego źródła (klucz: SHA-256) program jest kompilowany w tle, a kolejne wykonania dostają
+ * gotową klasę. Źródło, którego nie da się przetłumaczyć, zostaje zapamiętane jako interpretowane
+ */
+final class HotScripts {
+    static final int DEFAULT_THRESHOLD = 3;
+    static final HotScripts SHARED = new HotScripts();
+
+    // Zapamiętanych źródeł (edytor generuje nowe przy każdej zmianie); najdawniej używane wypadają
+    private static final int MAX_SCRIPTS = 64;
+
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "script-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class Entry {
+        int runs;
+        // null, dopóki kompilacja się nie zaczęła; wynik null = źródło zostaje interpretowane
+        CompletableFuture<CompiledScript> compiled;
+    }
+
+    private final Map<String, Entry> scripts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    /**
+     * Liczy wykonanie źródła
+     * @return skompilowany program, jeśli jest już gotowy; null, gdy trzeba interpretować
+     */
+    synchronized CompiledScript lookup(String code, int threshold) {
+        if (threshold <= 0) return null;
+        String hash = hash(code);
+        Entry entry = scripts.computeIfAbsent(hash, key -> new Entry());
+        if (entry.compiled == null) {
+            if (++entry.runs < threshold) return null;
+            String className = "Script" + hash.substring(0, 16);
+            entry.compiled = CompletableFuture.supplyAsync(() -> compileOrNull(code, className), COMPILER);
+        }
+        return entry.compiled.getNow(null);
+    }
+
+    private static CompiledScript compileOrNull(String code, String className) {
+        try {
+            return CompiledScript.compile(code, className);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String hash(String code) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,5 +1,18 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class Main {
     public static void main(String[] args) {
@@ -34,8 +47,11 @@ class Lexer {
         // ===== KEYWORDS =====
         IF, ELSE, ELSEIF,
         WHILE, FOR,
+        PARALLEL, REDUCE,
+        SPAWN, AWAIT,
         RETURN,
-        CLASS, FN,
+        CLASS, FN, CACHED,
+        IMPORT,
         TRUE, FALSE,
         INT32, INT64, INT128,
         LONG, DOUBLE, FLOAT,
@@ -87,10 +103,28 @@ class Lexer {
 class Token {
     final Lexer.TokenType type;
     final String value;
+    // Pozycja w źródle (od 1); 0 dla tokenów syntetycznych
+    final int line;
+    final int column;
+    // Numer symbolu dla identyfikatorów (Symbols), -1 dla pozostałych tokenów
+    final int symbol;
 
     Token(Lexer.TokenType type, String value) {
+        this(type, value, 0, 0);
+    }
+
+    Token(Lexer.TokenType type, String value, int line, int column) {
         this.type = type;
-        this.value = value;
+        this.line = line;
+        this.column = column;
+        if (type == Lexer.TokenType.IDENTIFIER) {
+            // Ten sam identyfikator w całym źródle to jeden obiekt String i jeden numer
+            this.symbol = Symbols.intern(value);
+            this.value = Symbols.name(symbol);
+        } else {
+            this.symbol = -1;
+            this.value = value;
+        }
     }
 
     @Override
@@ -99,256 +133,1064 @@ class Token {
     }
 
     // ===== MINI LEXER W KLASIE TOKEN =====
+    // Słowa to ciągi znaków bez białych znaków (jak split("\\s+")); każdy token zna swoją pozycję
     static List<Token> tokenize(String code) {
         List<Token> tokens = new ArrayList<>();
 
-        String[] words = code.split("\\s+"); // dzieli po spacji (prosty start)
-        for (String word : words) {
-            switch (word) {
-                // ===== KEYWORDS =====
-                case "if" -> tokens.add(new Token(Lexer.TokenType.IF, null));
-                case "else" -> tokens.add(new Token(Lexer.TokenType.ELSE, null));
-                case "elseif" -> tokens.add(new Token(Lexer.TokenType.ELSEIF, null));
-                case "while" -> tokens.add(new Token(Lexer.TokenType.WHILE, null));
-                case "for" -> tokens.add(new Token(Lexer.TokenType.FOR, null));
-                case "return" -> tokens.add(new Token(Lexer.TokenType.RETURN, null));
-                case "class" -> tokens.add(new Token(Lexer.TokenType.CLASS, null));
-                case "fn" -> tokens.add(new Token(Lexer.TokenType.FN, null));
-                case "true" -> tokens.add(new Token(Lexer.TokenType.TRUE, null));
-                case "false" -> tokens.add(new Token(Lexer.TokenType.FALSE, null));
-
-                // ===== TYPES =====
-                case "int32" -> tokens.add(new Token(Lexer.TokenType.INT32, null));
-                case "int64" -> tokens.add(new Token(Lexer.TokenType.INT64, null));
-                case "int128" -> tokens.add(new Token(Lexer.TokenType.INT128, null));
-                case "long" -> tokens.add(new Token(Lexer.TokenType.LONG, null));
-                case "double" -> tokens.add(new Token(Lexer.TokenType.DOUBLE, null));
-                case "float" -> tokens.add(new Token(Lexer.TokenType.FLOAT, null));
-                case "string" -> tokens.add(new Token(Lexer.TokenType.STRING_TYPE, null));
-                case "bool" -> tokens.add(new Token(Lexer.TokenType.BOOL_TYPE, null));
-                case "void" -> tokens.add(new Token(Lexer.TokenType.VOID, null));
-
-                // ===== OPERATORS =====
-                case "+" -> tokens.add(new Token(Lexer.TokenType.PLUS, null));
-                case "-" -> tokens.add(new Token(Lexer.TokenType.MINUS, null));
-                case "*" -> tokens.add(new Token(Lexer.TokenType.STAR, null));
-                case "/" -> tokens.add(new Token(Lexer.TokenType.SLASH, null));
-                case "%" -> tokens.add(new Token(Lexer.TokenType.MOD, null));
-                case "=" -> tokens.add(new Token(Lexer.TokenType.EQUAL, null));
-                case "==" -> tokens.add(new Token(Lexer.TokenType.EQUAL_EQUAL, null));
-                case "!" -> tokens.add(new Token(Lexer.TokenType.BANG, null));
-                case "!=" -> tokens.add(new Token(Lexer.TokenType.BANG_EQUAL, null));
-                case ">" -> tokens.add(new Token(Lexer.TokenType.GREATER, null));
-                case ">=" -> tokens.add(new Token(Lexer.TokenType.GREATER_EQUAL, null));
-                case "<" -> tokens.add(new Token(Lexer.TokenType.LESS, null));
-                case "<=" -> tokens.add(new Token(Lexer.TokenType.LESS_EQUAL, null));
-                case "&&" -> tokens.add(new Token(Lexer.TokenType.AND, null));
-                case "||" -> tokens.add(new Token(Lexer.TokenType.OR, null));
-
-                // ===== STRUCTURE =====
-                case "{" -> tokens.add(new Token(Lexer.TokenType.LBRACE, null));
-                case "}" -> tokens.add(new Token(Lexer.TokenType.RBRACE, null));
-                case "(" -> tokens.add(new Token(Lexer.TokenType.LPAREN, null));
-                case ")" -> tokens.add(new Token(Lexer.TokenType.RPAREN, null));
-                case "[" -> tokens.add(new Token(Lexer.TokenType.LBRACKET, null));
-                case "]" -> tokens.add(new Token(Lexer.TokenType.RBRACKET, null));
-                case "," -> tokens.add(new Token(Lexer.TokenType.COMMA, null));
-                case "." -> tokens.add(new Token(Lexer.TokenType.DOT, null));
-                case ";" -> tokens.add(new Token(Lexer.TokenType.SEMICOLON, null));
-                case ":" -> tokens.add(new Token(Lexer.TokenType.COLON, null));
-
-                // ===== LITERALS =====
-                default -> {
-                    if (word.matches("-?\\d+(\\.\\d+)?")) { // liczba całkowita lub zmiennoprzecinkowa
-                        tokens.add(new Token(Lexer.TokenType.NUMBER, word));
-                    } else if (word.startsWith("\"") && word.endsWith("\"")) { // string w cudzysłowie
-                        tokens.add(new Token(Lexer.TokenType.STRING, word.substring(1, word.length() - 1)));
-                    } else { // identyfikator
-                        tokens.add(new Token(Lexer.TokenType.IDENTIFIER, word));
-                    }
+        int line = 1;
+        int column = 1;
+        int wordStart = -1;
+        int wordLine = 0;
+        int wordColumn = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (isSpace(c)) {
+                if (wordStart >= 0) {
+                    tokens.add(wordToken(code.substring(wordStart, i), wordLine, wordColumn));
+                    wordStart = -1;
                 }
+            } else if (wordStart < 0) {
+                wordStart = i;
+                wordLine = line;
+                wordColumn = column;
+            }
+            if (c == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
             }
         }
+        if (wordStart >= 0) {
+            tokens.add(wordToken(code.substring(wordStart), wordLine, wordColumn));
+        }
 
-        tokens.add(new Token(Lexer.TokenType.EOF, null)); // koniec kodu
+        tokens.add(new Token(Lexer.TokenType.EOF, null, line, column)); // koniec kodu
         return tokens;
     }
+
+    // Te same znaki co \s w wyrażeniach regularnych
+    static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    // Jedno słowo -> token; wspólne dla tokenize i TokenStream
+    static Token wordToken(String word, int line, int column) {
+        Lexer.TokenType type = switch (word) {
+            // ===== KEYWORDS =====
+            case "if" -> Lexer.TokenType.IF;
+            case "else" -> Lexer.TokenType.ELSE;
+            case "elseif" -> Lexer.TokenType.ELSEIF;
+            case "while" -> Lexer.TokenType.WHILE;
+            case "for" -> Lexer.TokenType.FOR;
+            case "parallel" -> Lexer.TokenType.PARALLEL;
+            case "reduce" -> Lexer.TokenType.REDUCE;
+            case "spawn" -> Lexer.TokenType.SPAWN;
+            case "await" -> Lexer.TokenType.AWAIT;
+            case "return" -> Lexer.TokenType.RETURN;
+            case "class" -> Lexer.TokenType.CLASS;
+            case "fn" -> Lexer.TokenType.FN;
+            case "cached" -> Lexer.TokenType.CACHED;
+            case "import" -> Lexer.TokenType.IMPORT;
+            case "true" -> Lexer.TokenType.TRUE;
+            case "false" -> Lexer.TokenType.FALSE;
+
+            // ===== TYPES =====
+            case "int32" -> Lexer.TokenType.INT32;
+            case "int64" -> Lexer.TokenType.INT64;
+            case "int128" -> Lexer.TokenType.INT128;
+            case "long" -> Lexer.TokenType.LONG;
+            case "double" -> Lexer.TokenType.DOUBLE;
+            case "float" -> Lexer.TokenType.FLOAT;
+            case "string" -> Lexer.TokenType.STRING_TYPE;
+            case "bool" -> Lexer.TokenType.BOOL_TYPE;
+            case "void" -> Lexer.TokenType.VOID;
+
+            // ===== OPERATORS =====
+            case "+" -> Lexer.TokenType.PLUS;
+            case "-" -> Lexer.TokenType.MINUS;
+            case "*" -> Lexer.TokenType.STAR;
+            case "/" -> Lexer.TokenType.SLASH;
+            case "%" -> Lexer.TokenType.MOD;
+            case "=" -> Lexer.TokenType.EQUAL;
+            case "==" -> Lexer.TokenType.EQUAL_EQUAL;
+            case "!" -> Lexer.TokenType.BANG;
+            case "!=" -> Lexer.TokenType.BANG_EQUAL;
+            case ">" -> Lexer.TokenType.GREATER;
+            case ">=" -> Lexer.TokenType.GREATER_EQUAL;
+            case "<" -> Lexer.TokenType.LESS;
+            case "<=" -> Lexer.TokenType.LESS_EQUAL;
+            case "&&" -> Lexer.TokenType.AND;
+            case "||" -> Lexer.TokenType.OR;
+
+            // ===== STRUCTURE =====
+            case "{" -> Lexer.TokenType.LBRACE;
+            case "}" -> Lexer.TokenType.RBRACE;
+            case "(" -> Lexer.TokenType.LPAREN;
+            case ")" -> Lexer.TokenType.RPAREN;
+            case "[" -> Lexer.TokenType.LBRACKET;
+            case "]" -> Lexer.TokenType.RBRACKET;
+            case "," -> Lexer.TokenType.COMMA;
+            case "." -> Lexer.TokenType.DOT;
+            case ";" -> Lexer.TokenType.SEMICOLON;
+            case ":" -> Lexer.TokenType.COLON;
+
+            default -> null;
+        };
+        if (type != null) return new Token(type, null, line, column);
+
+        // ===== LITERALS =====
+        if (word.matches("-?\\d+(\\.\\d+)?")) { // liczba całkowita lub zmiennoprzecinkowa
+            return new Token(Lexer.TokenType.NUMBER, word, line, column);
+        } else if (word.startsWith("\"") && word.endsWith("\"")) { // string w cudzysłowie
+            return new Token(Lexer.TokenType.STRING, word.substring(1, word.length() - 1), line, column);
+        } else { // identyfikator
+            return new Token(Lexer.TokenType.IDENTIFIER, word, line, column);
+        }
+    }
+}
+
+// ===== TABLICA SYMBOLI =====
+// Identyfikatory są zamieniane na gęste numery już w lekserze. Środowiska i tablica funkcji
+// interpretera są indeksowane tymi numerami zamiast haszować i porównywać napisy.
+// Tablica jest wspólna dla procesu (REPL, wątki zadań), numery nigdy się nie zmieniają.
+final class Symbols {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[256];
+    private static int count;
+
+    // Nazwa z tokenu zastępczego po błędzie składni (EOF bez wartości); takie węzły nigdy
+    // nie są wykonywane, bo parse() kończy się błędem
+    static final String ERROR_NAME = "<error>";
+
+    private Symbols() {}
+
+    static int intern(String name) {
+        if (name == null) name = ERROR_NAME;
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    // Nazwa jest zapisywana przed publikacją numeru w mapie, więc name() widzi ją z każdego wątku
+    private static synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        if (count == names.length) names = Arrays.copyOf(names, count * 2);
+        names[count] = name;
+        ids.put(name, count);
+        return count++;
+    }
+
+    static String name(int symbol) {
+        return names[symbol];
+    }
+
+    static int count() {
+        return ids.size();
+    }
+}
+
+// ===== STRUMIEŃ TOKENÓW =====
+// Leniwy lekser dla trybu strumieniowego: czyta źródło z Readera małymi porcjami i tnie je
+// na słowa tak samo jak tokenize, ale w pamięci trzyma tylko bieżące słowo.
+class TokenStream {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int length;
+    private int position;
+    private final StringBuilder word = new StringBuilder();
+    private int line = 1;
+    private int column = 1;
+
+    TokenStream(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Kolejny token; po końcu źródła zawsze EOF
+    Token next() {
+        word.setLength(0);
+        int wordLine = 0;
+        int wordColumn = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (Token.isSpace(c)) {
+                advancePosition(c);
+                if (word.length() > 0) break;
+            } else {
+                if (word.length() == 0) {
+                    wordLine = line;
+                    wordColumn = column;
+                }
+                word.append((char) c);
+                advancePosition(c);
+            }
+        }
+        if (word.length() == 0) return new Token(Lexer.TokenType.EOF, null, line, column);
+        return Token.wordToken(word.toString(), wordLine, wordColumn);
+    }
+
+    private void advancePosition(int c) {
+        if (c == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+    }
+
+    private int read() {
+        if (position == length) {
+            try {
+                length = reader.read(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
 }
 
 // ===== KLASY AST (Abstract Syntax Tree) =====
-abstract class ASTNode {}
+abstract sealed class ASTNode permits Expression, Statement, Program {}
 
 // ===== WYRAŻENIA =====
-abstract class Expression extends ASTNode {}
+// Każde wyrażenie niesie stały znacznik rodzaju; interpreter wybiera gałąź jednym switch
+abstract sealed class Expression extends ASTNode {
+    static final int NUMBER_LITERAL = 0;
+    static final int STRING_LITERAL = 1;
+    static final int BOOLEAN_LITERAL = 2;
+    static final int IDENTIFIER = 3;
+    static final int BINARY = 4;
+    static final int COMPARE_LOCALS = 5;
+    static final int COMPARE_LOCAL_CONSTANT = 6;
+    static final int UNARY = 7;
+    static final int CALL = 8;
+    static final int CALL_LOCALS = 9;
+    static final int SPAWN = 10;
+    static final int AWAIT = 11;
+    static final int BRANCH_PROBE = 12;
+
+    final int kind;
+    Expression(int kind) { this.kind = kind; }
+}
 
-class NumberLiteral extends Expression {
+final class NumberLiteral extends Expression {
     final String value;
-    NumberLiteral(String value) { this.value = value; }
+    NumberLiteral(String value) { super(NUMBER_LITERAL); this.value = value; }
 }
 
-class StringLiteral extends Expression {
+final class StringLiteral extends Expression {
     final String value;
-    StringLiteral(String value) { this.value = value; }
+    StringLiteral(String value) { super(STRING_LITERAL); this.value = value; }
 }
 
-class BooleanLiteral extends Expression {
+final class BooleanLiteral extends Expression {
     final boolean value;
-    BooleanLiteral(boolean value) { this.value = value; }
+    BooleanLiteral(boolean value) { super(BOOLEAN_LITERAL); this.value = value; }
 }
 
-class Identifier extends Expression {
+final class Identifier extends Expression {
     final String name;
-    Identifier(String name) { this.name = name; }
+    final int symbol;
+    Identifier(String name) { this(name, Symbols.intern(name)); }
+    Identifier(String name, int symbol) { super(IDENTIFIER); this.name = name; this.symbol = symbol; }
 }
 
-class BinaryOperation extends Expression {
+sealed class BinaryOperation extends Expression {
     final Expression left;
     final Lexer.TokenType operator;
     final Expression right;
 
     BinaryOperation(Expression left, Lexer.TokenType operator, Expression right) {
+        this(BINARY, left, operator, right);
+    }
+
+    BinaryOperation(int kind, Expression left, Lexer.TokenType operator, Expression right) {
+        super(kind);
         this.left = left;
         this.operator = operator;
         this.right = right;
     }
 }
 
-class UnaryOperation extends Expression {
+final class UnaryOperation extends Expression {
     final Lexer.TokenType operator;
     final Expression operand;
 
     UnaryOperation(Lexer.TokenType operator, Expression operand) {
+        super(UNARY);
         this.operator = operator;
         this.operand = operand;
     }
 }
 
-class FunctionCall extends Expression {
+sealed class FunctionCall extends Expression {
     final String functionName;
+    final int symbol;
     final List<Expression> arguments;
+    // Funkcja wbudowana powiązana przy pierwszym wywołaniu (liczba argumentów już sprawdzona)
+    NativeFunction builtin;
 
     FunctionCall(String functionName, List<Expression> arguments) {
+        this(CALL, functionName, arguments);
+    }
+
+    FunctionCall(int kind, String functionName, List<Expression> arguments) {
+        super(kind);
         this.functionName = functionName;
+        this.symbol = Symbols.intern(functionName);
         this.arguments = arguments;
     }
 }
 
+// spawn f ( args ) - uruchamia wywołanie na osobnym wirtualnym wątku
+final class SpawnExpression extends Expression {
+    final FunctionCall call;
+    SpawnExpression(FunctionCall call) { super(SPAWN); this.call = call; }
+}
+
+// await task - czeka na wynik zadania
+final class AwaitExpression extends Expression {
+    final Expression task;
+    AwaitExpression(Expression task) { super(AWAIT); this.task = task; }
+}
+
 // ===== INSTRUKCJE =====
-abstract class Statement extends ASTNode {}
+abstract sealed class Statement extends ASTNode {
+    static final int VARIABLE_DECLARATION = 0;
+    static final int ASSIGNMENT = 1;
+    static final int INCREMENT_LOCAL = 2;
+    static final int IF = 3;
+    static final int WHILE = 4;
+    static final int FOR = 5;
+    static final int PARALLEL_FOR = 6;
+    static final int RETURN = 7;
+    static final int RETURN_BINARY = 8;
+    static final int EXPRESSION = 9;
+    static final int BLOCK = 10;
+    static final int FUNCTION_DECLARATION = 11;
+    static final int PROBE = 12;
+    static final int IMPORT = 13;
+
+    final int kind;
+    // Linia źródła, w której zaczyna się instrukcja (węzły z optymalizatora mają linię oryginału)
+    int line;
+    Statement(int kind) { this.kind = kind; }
+}
 
-class VariableDeclaration extends Statement {
+final class VariableDeclaration extends Statement {
     final Lexer.TokenType type;
     final String name;
+    final int symbol;
     final Expression initializer;
 
     VariableDeclaration(Lexer.TokenType type, String name, Expression initializer) {
+        super(VARIABLE_DECLARATION);
         this.type = type;
         this.name = name;
+        this.symbol = Symbols.intern(name);
         this.initializer = initializer;
     }
 }
 
-class Assignment extends Statement {
+sealed class Assignment extends Statement {
     final String name;
+    final int symbol;
     final Expression value;
 
     Assignment(String name, Expression value) {
+        this(ASSIGNMENT, name, value);
+    }
+
+    Assignment(int kind, String name, Expression value) {
+        super(kind);
         this.name = name;
+        this.symbol = Symbols.intern(name);
         this.value = value;
     }
 }
 
-class IfStatement extends Statement {
+final class IfStatement extends Statement {
     final Expression condition;
     final List<Statement> thenBranch;
     final List<Statement> elseBranch;
 
     IfStatement(Expression condition, List<Statement> thenBranch, List<Statement> elseBranch) {
+        super(IF);
         this.condition = condition;
         this.thenBranch = thenBranch;
         this.elseBranch = elseBranch;
     }
 }
 
-class WhileStatement extends Statement {
+final class WhileStatement extends Statement {
     final Expression condition;
     final List<Statement> body;
 
     WhileStatement(Expression condition, List<Statement> body) {
+        super(WHILE);
         this.condition = condition;
         this.body = body;
     }
 }
 
-class ForStatement extends Statement {
+final class ForStatement extends Statement {
     final Statement initializer;
     final Expression condition;
     final Statement increment;
     final List<Statement> body;
 
+    // Wyniki analizy zasięgów (patrz ScopeAnalysis)
+    final boolean declaresLocals;
+    final boolean capturesScope;
+    // Kanoniczna pętla licznikowa albo null
+    final CountedLoop countedLoop;
+
     ForStatement(Statement initializer, Expression condition, Statement increment, List<Statement> body) {
+        super(FOR);
         this.initializer = initializer;
         this.condition = condition;
         this.increment = increment;
         this.body = body;
+        this.declaresLocals = initializer instanceof VariableDeclaration || ScopeAnalysis.declaresLocals(body);
+        this.capturesScope = ScopeAnalysis.capturesScope(body);
+        this.countedLoop = CountedLoop.detect(this);
     }
 }
 
-class ReturnStatement extends Statement {
+// for ( int64 i = start ; i < bound ; i = i + step ) - licznik nieprzypisywany w ciele.
+// Interpreter trzyma licznik w natywnym long, a do zmiennej zapisuje go tylko gdy ciało ją czyta.
+class CountedLoop {
+    final String variable;
+    final int symbol;
+    final Expression start;
+    final Lexer.TokenType operator;
+    final Expression bound;
+    final boolean constantBound;
+    final long boundValue;
+    final long step;
+    final boolean readsVariable;
+
+    private CountedLoop(String variable, Expression start, Lexer.TokenType operator, Expression bound,
+                        long step, boolean readsVariable) {
+        this.variable = variable;
+        this.symbol = Symbols.intern(variable);
+        this.start = start;
+        this.operator = operator;
+        this.bound = bound;
+        this.constantBound = bound instanceof NumberLiteral n && isInteger(n.value);
+        this.boundValue = constantBound ? Long.parseLong(((NumberLiteral) bound).value) : 0;
+        this.step = step;
+        this.readsVariable = readsVariable;
+    }
+
+    static CountedLoop detect(ForStatement loop) {
+        if (!(loop.initializer instanceof VariableDeclaration init) || init.initializer == null) return null;
+        if (init.type != Lexer.TokenType.INT32 && init.type != Lexer.TokenType.INT64
+                && init.type != Lexer.TokenType.LONG) return null;
+        String name = init.name;
+
+        if (!(loop.condition instanceof BinaryOperation cond)
+                || !(cond.left instanceof Identifier condVar) || !condVar.name.equals(name)) return null;
+        switch (cond.operator) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, BANG_EQUAL -> { }
+            default -> { return null; }
+        }
+
+        if (!(loop.increment instanceof Assignment inc) || !inc.name.equals(name)
+                || !(inc.value instanceof BinaryOperation step)
+                || !(step.left instanceof Identifier stepVar) || !stepVar.name.equals(name)
+                || !(step.right instanceof NumberLiteral stepLiteral) || !isInteger(stepLiteral.value)) return null;
+        long stride = Long.parseLong(stepLiteral.value);
+        if (step.operator == Lexer.TokenType.MINUS) stride = -stride;
+        else if (step.operator != Lexer.TokenType.PLUS) return null;
+
+        // Ciało nie może przypisywać ani przesłaniać licznika, ani go przechwycić w closure
+        if (loop.capturesScope || writes(loop.body, name) || reads(cond.right, name)) return null;
+
+        return new CountedLoop(name, init.initializer, cond.operator, cond.right, stride, reads(loop.body, name));
+    }
+
+    private static boolean isInteger(String literal) {
+        return !literal.contains(".") && literal.length() < 19;
+    }
+
+    private static boolean writes(List<Statement> statements, String name) {
+        if (statements == null) return false;
+        for (Statement s : statements) {
+            if (writes(s, name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean writes(Statement s, String name) {
+        if (s instanceof VariableDeclaration d) return d.name.equals(name);
+        if (s instanceof Assignment a) return a.name.equals(name);
+        if (s instanceof IfStatement i) return writes(i.thenBranch, name) || writes(i.elseBranch, name);
+        if (s instanceof WhileStatement w) return writes(w.body, name);
+        if (s instanceof ForStatement f) return writes(f.initializer, name) || writes(f.increment, name) || writes(f.body, name);
+        if (s instanceof ParallelForStatement p) {
+            for (Reduction r : p.reductions) {
+                if (r.name.equals(name)) return true;
+            }
+            return writes(p.loop, name);
+        }
+        if (s instanceof BlockStatement b) return writes(b.statements, name);
+        return false;
+    }
+
+    private static boolean reads(List<Statement> statements, String name) {
+        if (statements == null) return false;
+        for (Statement s : statements) {
+            if (reads(s, name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean reads(Statement s, String name) {
+        if (s instanceof VariableDeclaration d) return reads(d.initializer, name);
+        if (s instanceof Assignment a) return reads(a.value, name);
+        if (s instanceof IfStatement i) return reads(i.condition, name) || reads(i.thenBranch, name) || reads(i.elseBranch, name);
+        if (s instanceof WhileStatement w) return reads(w.condition, name) || reads(w.body, name);
+        if (s instanceof ForStatement f) {
+            return reads(f.initializer, name) || reads(f.condition, name) || reads(f.increment, name) || reads(f.body, name);
+        }
+        if (s instanceof ParallelForStatement p) return reads(p.loop, name);
+        if (s instanceof ReturnStatement r) return reads(r.value, name);
+        if (s instanceof ExpressionStatement e) return reads(e.expression, name);
+        if (s instanceof BlockStatement b) return reads(b.statements, name);
+        return false;
+    }
+
+    private static boolean reads(Expression e, String name) {
+        if (e instanceof Identifier id) return id.name.equals(name);
+        if (e instanceof BinaryOperation b) return reads(b.left, name) || reads(b.right, name);
+        if (e instanceof UnaryOperation u) return reads(u.operand, name);
+        if (e instanceof FunctionCall c) {
+            for (Expression arg : c.arguments) {
+                if (reads(arg, name)) return true;
+            }
+        }
+        if (e instanceof SpawnExpression sp) return reads(sp.call, name);
+        if (e instanceof AwaitExpression aw) return reads(aw.task, name);
+        return false;
+    }
+}
+
+// parallel reduce ( + : sum ) for ( ... ) { ... }
+final class ParallelForStatement extends Statement {
+    final List<Reduction> reductions;
+    final ForStatement loop;
+
+    ParallelForStatement(List<Reduction> reductions, ForStatement loop) {
+        super(PARALLEL_FOR);
+        this.reductions = reductions;
+        this.loop = loop;
+    }
+}
+
+class Reduction {
+    final Lexer.TokenType operator;
+    final String name;
+    final int symbol;
+
+    Reduction(Lexer.TokenType operator, String name) {
+        this.operator = operator;
+        this.name = name;
+        this.symbol = Symbols.intern(name);
+    }
+}
+
+sealed class ReturnStatement extends Statement {
     final Expression value;
-    ReturnStatement(Expression value) { this.value = value; }
+    ReturnStatement(Expression value) { this(RETURN, value); }
+
+    ReturnStatement(int kind, Expression value) {
+        super(kind);
+        this.value = value;
+    }
 }
 
-class ExpressionStatement extends Statement {
+final class ExpressionStatement extends Statement {
     final Expression expression;
-    ExpressionStatement(Expression expression) { this.expression = expression; }
+    ExpressionStatement(Expression expression) { super(EXPRESSION); this.expression = expression; }
 }
 
-class BlockStatement extends Statement {
+final class BlockStatement extends Statement {
     final List<Statement> statements;
-    BlockStatement(List<Statement> statements) { this.statements = statements; }
+    final boolean declaresLocals;
+    final boolean capturesScope;
+
+    BlockStatement(List<Statement> statements) {
+        super(BLOCK);
+        this.statements = statements;
+        this.declaresLocals = ScopeAnalysis.declaresLocals(statements);
+        this.capturesScope = ScopeAnalysis.capturesScope(statements);
+    }
 }
 
-class FunctionDeclaration extends Statement {
+final class FunctionDeclaration extends Statement {
     final Lexer.TokenType returnType;
     final String name;
+    final int symbol;
     final List<Parameter> parameters;
+    // null, gdy ciało czeka na parsowanie (lazyBody)
     final List<Statement> body;
+    // cached fn ... - użytkownik deklaruje, że wynik zależy tylko od argumentów
+    final boolean cached;
+    // Tokeny ciała do sparsowania przy pierwszym wywołaniu albo null
+    final LazyBody lazyBody;
+
+    // Wyniki PurityAnalysis: funkcja czysta i nazwy funkcji, które wywołuje
+    boolean pure;
+    Set<String> callees = Set.of();
 
     FunctionDeclaration(Lexer.TokenType returnType, String name, List<Parameter> parameters, List<Statement> body) {
+        this(returnType, name, parameters, body, false);
+    }
+
+    FunctionDeclaration(Lexer.TokenType returnType, String name, List<Parameter> parameters, List<Statement> body, boolean cached) {
+        this(returnType, name, parameters, body, cached, null);
+    }
+
+    FunctionDeclaration(Lexer.TokenType returnType, String name, List<Parameter> parameters, List<Statement> body,
+                        boolean cached, LazyBody lazyBody) {
+        super(FUNCTION_DECLARATION);
         this.returnType = returnType;
         this.name = name;
+        this.symbol = Symbols.intern(name);
         this.parameters = parameters;
         this.body = body;
+        this.cached = cached;
+        this.lazyBody = lazyBody;
+    }
+}
+
+// import "lib.cl" ; - ścieżka względem pliku, który importuje (ModuleCache)
+final class ImportStatement extends Statement {
+    final String path;
+
+    ImportStatement(String path) {
+        super(IMPORT);
+        this.path = path;
+    }
+}
+
+// Ciało funkcji odłożone przez parser w trybie leniwym: same tokeny od '{' do pasującego '}'.
+// Parsowane raz, przy pierwszym wywołaniu; przebiegi optymalizatora dopisują się jako
+// przekształcenia wykonywane zaraz po parsowaniu.
+final class LazyBody {
+    private List<Token> tokens;
+    private final List<UnaryOperator<List<Statement>>> transforms;
+
+    LazyBody(List<Token> tokens) {
+        this(tokens, List.of());
+    }
+
+    private LazyBody(List<Token> tokens, List<UnaryOperator<List<Statement>>> transforms) {
+        this.tokens = tokens;
+        this.transforms = transforms;
+    }
+
+    int tokenCount() {
+        return tokens == null ? 0 : tokens.size();
+    }
+
+    // To samo ciało z dodatkowym przekształceniem (np. przebiegiem optymalizatora)
+    LazyBody map(UnaryOperator<List<Statement>> transform) {
+        List<UnaryOperator<List<Statement>>> all = new ArrayList<>(transforms);
+        all.add(transform);
+        return new LazyBody(tokens, all);
+    }
+
+    List<Statement> parse() {
+        List<Token> code = new ArrayList<>(tokens.size() + 1);
+        code.addAll(tokens);
+        code.add(new Token(Lexer.TokenType.EOF, null));
+
+        Parser parser = new Parser(code);
+        parser.setLazyFunctionBodies(true);
+        List<Statement> body = parser.parseFunctionBody();
+        for (UnaryOperator<List<Statement>> transform : transforms) {
+            body = transform.apply(body);
+        }
+        tokens = null;
+        return body;
     }
 }
 
 class Parameter {
     final Lexer.TokenType type;
     final String name;
+    final int symbol;
 
     Parameter(Lexer.TokenType type, String name) {
         this.type = type;
         this.name = name;
+        this.symbol = Symbols.intern(name);
     }
 }
 
-class Program extends ASTNode {
+// ===== SUPERINSTRUKCJE =====
+// Węzły łączone przez SuperinstructionFusion. Dziedziczą po węzłach, które zastępują,
+// więc analizy AST widzą ten sam kształt, a interpreter wykonuje je jednym dispatchem.
+
+// x = x + c / x = x - c (c całkowite)
+final class IncrementLocal extends Assignment {
+    final long delta;
+
+    IncrementLocal(String name, BinaryOperation value, long delta) {
+        super(INCREMENT_LOCAL, name, value);
+        this.delta = delta;
+    }
+}
+
+// a < b, a == b, ... gdzie a i b to zmienne
+final class CompareLocals extends BinaryOperation {
+    final int leftSymbol;
+    final int rightSymbol;
+
+    CompareLocals(Identifier left, Lexer.TokenType operator, Identifier right) {
+        super(COMPARE_LOCALS, left, operator, right);
+        this.leftSymbol = left.symbol;
+        this.rightSymbol = right.symbol;
+    }
+}
+
+// a < c, a == c, ... gdzie c to stała całkowita
+final class CompareLocalConstant extends BinaryOperation {
+    final int leftSymbol;
+    final long constant;
+
+    CompareLocalConstant(Identifier left, Lexer.TokenType operator, NumberLiteral right, long constant) {
+        super(COMPARE_LOCAL_CONSTANT, left, operator, right);
+        this.leftSymbol = left.symbol;
+        this.constant = constant;
+    }
+}
+
+// return a op b
+final class ReturnBinary extends ReturnStatement {
+    final BinaryOperation operation;
+
+    ReturnBinary(BinaryOperation operation) {
+        super(RETURN_BINARY, operation);
+        this.operation = operation;
+    }
+}
+
+// f ( a , b , ... ) gdzie wszystkie argumenty to zmienne
+final class CallLocals extends FunctionCall {
+    final int[] argumentSymbols;
+
+    CallLocals(String functionName, List<Expression> arguments) {
+        super(CALL_LOCALS, functionName, arguments);
+        this.argumentSymbols = new int[arguments.size()];
+        for (int i = 0; i < argumentSymbols.length; i++) {
+            argumentSymbols[i] = ((Identifier) arguments.get(i)).symbol;
+        }
+    }
+}
+
+// ===== SONDY (debugger, pokrycie) =====
+// Obwódka wstawiana w listę instrukcji zamiast instrukcji (Debugger - linie z breakpointem,
+// Coverage - każda instrukcja do pierwszego wykonania). Interpreter najpierw woła sondę,
+// potem wykonuje instrukcję, którą sonda zwróci; zdjęcie sondy przywraca oryginał w liście,
+// więc nieinstrumentowany kod nie płaci nic. Analizy AST patrzą przez obwódkę.
+final class ProbeStatement extends Statement {
+    final Statement statement;
+    final Probe probe;
+
+    ProbeStatement(Statement statement, Probe probe) {
+        super(PROBE);
+        this.statement = statement;
+        this.probe = probe;
+        this.line = statement.line;
+    }
+}
+
+interface Probe {
+    // Wołane na wątku wykonania; zwraca instrukcję do wykonania (zwykle site.statement)
+    Statement reached(ProbeStatement site, Environment environment);
+}
+
+// Warunek if/while/for pod pokryciem gałęzi: zgłasza wynik, zanim instrukcja go użyje
+final class BranchProbe extends Expression {
+    final Expression condition;
+    final Coverage coverage;
+    final int branch;
+
+    BranchProbe(Expression condition, Coverage coverage, int branch) {
+        super(BRANCH_PROBE);
+        this.condition = condition;
+        this.coverage = coverage;
+        this.branch = branch;
+    }
+}
+
+// ===== ANALIZA ZASIĘGÓW =====
+// Blok potrzebuje własnego Environment tylko wtedy, gdy coś w nim deklaruje.
+// if/while nie tworzą zasięgu, więc ich deklaracje trafiają do bloku nadrzędnego.
+// Zasięg "ucieka" tylko przez zagnieżdżoną deklarację funkcji (closure), więc
+// zasięgi bez takich deklaracji interpreter może ponownie wykorzystywać.
+final class ScopeAnalysis {
+    private ScopeAnalysis() {}
+
+    static boolean declaresLocals(List<Statement> statements) {
+        if (statements == null) return false;
+        for (Statement s : statements) {
+            if (s instanceof ProbeStatement p) s = p.statement;
+            if (s instanceof VariableDeclaration || s instanceof FunctionDeclaration) return true;
+            if (s instanceof IfStatement i && (declaresLocals(i.thenBranch) || declaresLocals(i.elseBranch))) return true;
+            if (s instanceof WhileStatement w && declaresLocals(w.body)) return true;
+        }
+        return false;
+    }
+
+    static boolean capturesScope(List<Statement> statements) {
+        if (statements == null) return false;
+        for (Statement s : statements) {
+            if (capturesScope(s)) return true;
+        }
+        return false;
+    }
+
+    private static boolean capturesScope(Statement s) {
+        if (s instanceof ProbeStatement p) return capturesScope(p.statement);
+        if (s instanceof FunctionDeclaration) return true;
+        if (s instanceof IfStatement i) return capturesScope(i.thenBranch) || capturesScope(i.elseBranch);
+        if (s instanceof WhileStatement w) return capturesScope(w.body);
+        if (s instanceof ForStatement f) return f.capturesScope;
+        if (s instanceof ParallelForStatement p) return p.loop.capturesScope;
+        if (s instanceof BlockStatement b) return b.capturesScope;
+        return false;
+    }
+}
+
+// ===== ANALIZA CZYSTOŚCI FUNKCJI =====
+// Funkcja jest czysta, gdy czyta i zapisuje tylko własne parametry i zmienne lokalne,
+// nie wypisuje nic, nie używa zadań ani kanałów, nie deklaruje funkcji zagnieżdżonych
+// i wywołuje wyłącznie inne czyste funkcje (z tego programu albo wcześniej wykonanych
+// fragmentów - REPL, tryb strumieniowy). Wynik takiej funkcji zależy tylko od argumentów,
+// więc interpreter może go zapamiętać.
+// Nazwy zadeklarowane w programie więcej niż raz traktujemy jako nieczyste.
+final class PurityAnalysis {
+    private static final Set<String> IMPURE_BUILTINS = Set.of("print", "println", "flush", "channel", "send", "recv");
+
+    private PurityAnalysis() {}
+
+    static void analyze(Program program) {
+        analyze(program, Builtins::isPure);
+    }
+
+    // pureOutside mówi, czy funkcja spoza programu (już zarejestrowana) jest czysta
+    static void analyze(Program program, Predicate<String> pureOutside) {
+        List<FunctionDeclaration> declarations = new ArrayList<>();
+        collect(program.statements, declarations);
+
+        Map<String, FunctionDeclaration> candidates = new HashMap<>();
+        Set<String> duplicated = new HashSet<>();
+        for (FunctionDeclaration f : declarations) {
+            if (candidates.put(f.name, f) != null) duplicated.add(f.name);
+        }
+        Set<String> declared = new HashSet<>(candidates.keySet());
+        candidates.keySet().removeAll(duplicated);
+
+        // Najpierw warunki lokalne, potem punkt stały po grafie wywołań
+        for (FunctionDeclaration f : declarations) {
+            Set<String> callees = new HashSet<>();
+            f.pure = !duplicated.contains(f.name) && isLocallyPure(f, callees);
+            f.callees = callees;
+            if (!f.pure) candidates.remove(f.name);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionDeclaration f : List.copyOf(candidates.values())) {
+                for (String callee : f.callees) {
+                    boolean calleePure = declared.contains(callee)
+                            ? candidates.containsKey(callee)
+                            : pureOutside.test(callee);
+                    if (!calleePure) {
+                        f.pure = false;
+                        candidates.remove(f.name);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collect(List<Statement> statements, List<FunctionDeclaration> out) {
+        if (statements == null) return;
+        for (Statement s : statements) {
+            if (s instanceof ProbeStatement p) s = p.statement;
+            if (s instanceof FunctionDeclaration f) {
+                out.add(f);
+                collect(f.body, out);
+            } else if (s instanceof IfStatement i) {
+                collect(i.thenBranch, out);
+                collect(i.elseBranch, out);
+            } else if (s instanceof WhileStatement w) {
+                collect(w.body, out);
+            } else if (s instanceof ForStatement f) {
+                collect(f.body, out);
+            } else if (s instanceof ParallelForStatement p) {
+                collect(p.loop.body, out);
+            } else if (s instanceof BlockStatement b) {
+                collect(b.statements, out);
+            }
+        }
+    }
+
+    // Ciało sparsowane dopiero przy pierwszym wywołaniu (tryb leniwy) - funkcja analizowana
+    // osobno; poza rekurencją wszystkie wywoływane funkcje muszą już być znane jako czyste
+    static boolean isPure(String name, List<Parameter> parameters, List<Statement> body,
+                          Set<String> callees, Predicate<String> pureOutside) {
+        if (!isLocallyPure(parameters, body, callees)) return false;
+        for (String callee : callees) {
+            if (!callee.equals(name) && !pureOutside.test(callee)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isLocallyPure(FunctionDeclaration f, Set<String> callees) {
+        // Ciało jeszcze niesparsowane - ocenimy je przy pierwszym wywołaniu
+        if (f.body == null) return false;
+        return isLocallyPure(f.parameters, f.body, callees);
+    }
+
+    private static boolean isLocallyPure(List<Parameter> parameters, List<Statement> body, Set<String> callees) {
+        Set<String> scope = new HashSet<>();
+        for (Parameter p : parameters) scope.add(p.name);
+        return pure(body, scope, callees);
+    }
+
+    // if/while nie tworzą zasięgu (jak w interpreterze), for i blok - tak
+    private static boolean pure(List<Statement> statements, Set<String> scope, Set<String> callees) {
+        if (statements == null) return true;
+        for (Statement s : statements) {
+            if (!pure(s, scope, callees)) return false;
+        }
+        return true;
+    }
+
+    private static boolean pure(Statement s, Set<String> scope, Set<String> callees) {
+        if (s instanceof ProbeStatement p) return pure(p.statement, scope, callees);
+        if (s instanceof VariableDeclaration d) {
+            if (d.initializer != null && !pure(d.initializer, scope, callees)) return false;
+            scope.add(d.name);
+            return true;
+        }
+        if (s instanceof Assignment a) return scope.contains(a.name) && pure(a.value, scope, callees);
+        if (s instanceof IfStatement i) {
+            return pure(i.condition, scope, callees) && pure(i.thenBranch, scope, callees)
+                    && pure(i.elseBranch, scope, callees);
+        }
+        if (s instanceof WhileStatement w) return pure(w.condition, scope, callees) && pure(w.body, scope, callees);
+        if (s instanceof ForStatement f) {
+            Set<String> inner = new HashSet<>(scope);
+            if (f.initializer != null && !pure(f.initializer, inner, callees)) return false;
+            if (f.condition != null && !pure(f.condition, inner, callees)) return false;
+            if (f.increment != null && !pure(f.increment, inner, callees)) return false;
+            return pure(f.body, inner, callees);
+        }
+        if (s instanceof ParallelForStatement p) {
+            for (Reduction r : p.reductions) {
+                if (!scope.contains(r.name)) return false;
+            }
+            return pure(p.loop, scope, callees);
+        }
+        if (s instanceof ReturnStatement r) return r.value == null || pure(r.value, scope, callees);
+        if (s instanceof ExpressionStatement e) return pure(e.expression, scope, callees);
+        if (s instanceof BlockStatement b) return pure(b.statements, new HashSet<>(scope), callees);
+        // Zagnieżdżona deklaracja funkcji rejestruje funkcję globalnie
+        return false;
+    }
+
+    private static boolean pure(Expression e, Set<String> scope, Set<String> callees) {
+        if (e instanceof NumberLiteral || e instanceof StringLiteral || e instanceof BooleanLiteral) return true;
+        if (e instanceof Identifier id) return scope.contains(id.name);
+        if (e instanceof BinaryOperation b) return pure(b.left, scope, callees) && pure(b.right, scope, callees);
+        if (e instanceof UnaryOperation u) return pure(u.operand, scope, callees);
+        if (e instanceof BranchProbe b) return pure(b.condition, scope, callees);
+        if (e instanceof FunctionCall c) {
+            if (IMPURE_BUILTINS.contains(c.functionName)) return false;
+            for (Expression arg : c.arguments) {
+                if (!pure(arg, scope, callees)) return false;
+            }
+            callees.add(c.functionName);
+            return true;
+        }
+        // spawn / await
+        return false;
+    }
+}
+
+final class Program extends ASTNode {
     final List<Statement> statements;
     Program(List<Statement> statements) { this.statements = statements; }
 }
 
+// ===== DIAGNOSTYKA PARSERA =====
+// Lekki opis błędu składni (bez wyjątku i stosu wywołań)
+final class Diagnostic {
+    final int line;
+    final int column;
+    final String message;
+
+    Diagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + message;
+    }
+}
+
 // ===== PARSER =====
+// Błędy nie przerywają parsowania: trafiają do listy diagnostyk, parser przechodzi w tryb
+// paniki (kolejne błędy tej samej instrukcji są pomijane) i na granicy instrukcji
+// synchronizuje się, żeby zebrać wszystkie błędy w jednym przebiegu.
 class Parser {
     private final List<Token> tokens;
+    // W trybie strumieniowym tokeny są dociągane na żądanie, inaczej null
+    private final TokenStream stream;
     private int current = 0;
+    // Ciała funkcji zapamiętywane jako tokeny i parsowane przy pierwszym wywołaniu
+    private boolean lazyFunctionBodies;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private boolean panicMode;
 
     Parser(List<Token> tokens) {
         this.tokens = tokens;
+        this.stream = null;
+    }
+
+    Parser(TokenStream stream) {
+        this.tokens = new ArrayList<>();
+        this.stream = stream;
+    }
+
+    public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+        this.lazyFunctionBodies = lazyFunctionBodies;
     }
 
     // ===== METODY POMOCNICZE =====
     private Token peek() {
+        while (stream != null && current >= tokens.size()) {
+            tokens.add(stream.next());
+        }
         return tokens.get(current);
     }
 
@@ -380,30 +1222,175 @@ class Parser {
         return false;
     }
 
+    // Przy błędzie nie przesuwa się; zwrócony token jest wtedy tylko zaślepką
     private Token consume(Lexer.TokenType type, String message) {
         if (check(type)) return advance();
-        throw new RuntimeException(message + " at " + peek());
+        error(peek(), message);
+        return peek();
+    }
+
+    private void error(Token at, String message) {
+        if (panicMode) return;
+        panicMode = true;
+        diagnostics.add(new Diagnostic(at.line, at.column, message + " at " + at));
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
     }
 
     // ===== PARSOWANIE PROGRAMU =====
+    // Zgłasza pierwszy błąd składni jako wyjątek; wszystkie są w getDiagnostics()
     public Program parse() {
+        Program program = parseAll();
+        throwIfErrors();
+        return program;
+    }
+
+    /**
+     * Parsuje całe źródło, zbierając wszystkie błędy składni zamiast przerywać na pierwszym
+     */
+    public Program parseAll() {
         List<Statement> statements = new ArrayList<>();
         while (!isAtEnd()) {
+            int before = current;
             statements.add(declaration());
+            // Zabłąkany '}' na najwyższym poziomie - synchronize się przed nim zatrzymuje
+            if (current == before) advance();
         }
         return new Program(statements);
     }
 
-    // ===== DEKLARACJE =====
-    private Statement declaration() {
+    private void throwIfErrors() {
+        if (!diagnostics.isEmpty()) {
+            throw new RuntimeException(diagnostics.get(0).message);
+        }
+    }
+
+    // ===== PARSOWANIE RÓWNOLEGŁE =====
+    // Minimalna liczba tokenów parsowana przez jedno zadanie fork-join
+    private static final int PARALLEL_GRAIN = 4096;
+
+    /**
+     * Parsuje program równolegle: tokeny są cięte przed każdym 'fn' / 'cached fn' na najwyższym
+     * poziomie, fragmenty parsowane na puli fork-join i sklejane w kolejności źródła, więc
+     * wynik jest taki sam jak z parse(). Przy błędzie składni parsuje sekwencyjnie,
+     * żeby zgłosić dokładnie ten sam błąd.
+     */
+    public Program parseParallel() {
+        if (stream != null) return parse();
+
+        List<Integer> bounds = declarationBoundaries();
+        if (bounds.size() <= 2) return parse();
+
         try {
-            if (match(Lexer.TokenType.FN)) return functionDeclaration();
-            if (isTypeKeyword(peek().type)) return variableDeclaration();
-            return statement();
+            List<Statement> statements = ForkJoinPool.commonPool()
+                    .invoke(new ParseTask(bounds, 0, bounds.size() - 1));
+            current = tokens.size() - 1;
+            return new Program(statements);
         } catch (RuntimeException e) {
+            current = 0;
+            return parse();
+        }
+    }
+
+    // Indeksy początków fragmentów (plus indeks EOF na końcu)
+    private List<Integer> declarationBoundaries() {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int depth = 0;
+        int end = tokens.size() - 1;
+        for (int i = 0; i < end; i++) {
+            Lexer.TokenType type = tokens.get(i).type;
+            if (type == Lexer.TokenType.LBRACE) depth++;
+            else if (type == Lexer.TokenType.RBRACE) depth--;
+            else if (depth == 0 && i > 0 && (type == Lexer.TokenType.CACHED ||
+                    (type == Lexer.TokenType.FN && tokens.get(i - 1).type != Lexer.TokenType.CACHED))) {
+                bounds.add(i);
+            }
+        }
+        bounds.add(end);
+        return bounds;
+    }
+
+    // Zakres fragmentów [from, to) z listy granic
+    private class ParseTask extends RecursiveTask<List<Statement>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Integer> bounds;
+        private final int from, to;
+
+        ParseTask(List<Integer> bounds, int from, int to) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Statement> compute() {
+            if (to - from > 1 && bounds.get(to) - bounds.get(from) > PARALLEL_GRAIN) {
+                int mid = (from + to) >>> 1;
+                ParseTask left = new ParseTask(bounds, from, mid);
+                ParseTask right = new ParseTask(bounds, mid, to);
+                right.fork();
+                List<Statement> statements = left.compute();
+                statements.addAll(right.join());
+                return statements;
+            }
+
+            List<Token> segment = new ArrayList<>(tokens.subList(bounds.get(from), bounds.get(to)));
+            segment.add(new Token(Lexer.TokenType.EOF, null));
+            Parser parser = new Parser(segment);
+            parser.setLazyFunctionBodies(lazyFunctionBodies);
+            return parser.parse().statements;
+        }
+    }
+
+    /**
+     * Następna instrukcja najwyższego poziomu albo null na końcu źródła.
+     * Przy TokenStream tokeny poprzedniej instrukcji są zwalniane, więc parser trzyma tylko bieżącą.
+     */
+    public Statement parseNext() {
+        if (stream != null && current > 0) {
+            tokens.subList(0, current).clear();
+            current = 0;
+        }
+        if (isAtEnd()) return null;
+        Statement statement = declaration();
+        throwIfErrors();
+        return statement;
+    }
+
+    // ===== DEKLARACJE =====
+    private Statement declaration() {
+        int start = current;
+        int line = peek().line;
+        Statement statement = declarationOrStatement();
+        if (statement != null) statement.line = line;
+        if (panicMode) {
+            // Błędny token na samym początku instrukcji trzeba pominąć, żeby iść dalej
+            if (current == start && !check(Lexer.TokenType.RBRACE)) advance();
             synchronize();
-            throw e;
+            panicMode = false;
+        }
+        return statement;
+    }
+
+    private Statement declarationOrStatement() {
+        if (match(Lexer.TokenType.FN)) return functionDeclaration(false);
+        if (match(Lexer.TokenType.CACHED)) {
+            consume(Lexer.TokenType.FN, "Expected 'fn' after 'cached'");
+            return functionDeclaration(true);
         }
+        if (match(Lexer.TokenType.IMPORT)) return importStatement();
+        if (isTypeKeyword(peek().type)) return variableDeclaration();
+        return statement();
+    }
+
+    private ImportStatement importStatement() {
+        Token path = consume(Lexer.TokenType.STRING, "Expected module path string after 'import'");
+        consume(Lexer.TokenType.SEMICOLON, "Expected ';' after import");
+        return new ImportStatement(path.value);
     }
 
     private boolean isTypeKeyword(Lexer.TokenType type) {
@@ -414,7 +1401,7 @@ class Parser {
                 type == Lexer.TokenType.VOID;
     }
 
-    private FunctionDeclaration functionDeclaration() {
+    private FunctionDeclaration functionDeclaration(boolean cached) {
         Lexer.TokenType returnType = advance().type;
         Token name = consume(Lexer.TokenType.IDENTIFIER, "Expected function name");
 
@@ -432,9 +1419,36 @@ class Parser {
         consume(Lexer.TokenType.RPAREN, "Expected ')' after parameters");
         consume(Lexer.TokenType.LBRACE, "Expected '{' before function body");
 
+        if (lazyFunctionBodies) {
+            LazyBody lazyBody = new LazyBody(skipBlock());
+            return new FunctionDeclaration(returnType, name.value, parameters, null, cached, lazyBody);
+        }
+
         List<Statement> body = block();
 
-        return new FunctionDeclaration(returnType, name.value, parameters, body);
+        return new FunctionDeclaration(returnType, name.value, parameters, body, cached);
+    }
+
+    // Przeskakuje ciało do pasującego '}' (włącznie) i zwraca jego tokeny bez parsowania
+    private List<Token> skipBlock() {
+        List<Token> body = new ArrayList<>();
+        int depth = 1;
+        while (!isAtEnd()) {
+            Token token = advance();
+            body.add(token);
+            if (token.type == Lexer.TokenType.LBRACE) depth++;
+            if (token.type == Lexer.TokenType.RBRACE && --depth == 0) return body;
+        }
+        error(peek(), "Expected '}' after block");
+        return body;
+    }
+
+    // Ciało odłożone przez skipBlock: instrukcje aż do zamykającego '}'
+    List<Statement> parseFunctionBody() {
+        List<Statement> body = block();
+        if (!isAtEnd()) error(peek(), "Unexpected token after function body");
+        throwIfErrors();
+        return body;
     }
 
     private VariableDeclaration variableDeclaration() {
@@ -455,6 +1469,7 @@ class Parser {
         if (match(Lexer.TokenType.IF)) return ifStatement();
         if (match(Lexer.TokenType.WHILE)) return whileStatement();
         if (match(Lexer.TokenType.FOR)) return forStatement();
+        if (match(Lexer.TokenType.PARALLEL)) return parallelForStatement();
         if (match(Lexer.TokenType.RETURN)) return returnStatement();
         if (match(Lexer.TokenType.LBRACE)) {
             List<Statement> statements = block();
@@ -515,7 +1530,15 @@ class Parser {
         Statement increment = null;
         if (!check(Lexer.TokenType.RPAREN)) {
             Expression expr = expression();
-            increment = new ExpressionStatement(expr);
+            if (match(Lexer.TokenType.EQUAL)) {
+                if (expr instanceof Identifier) {
+                    increment = new Assignment(((Identifier) expr).name, expression());
+                } else {
+                    error(previous(), "Invalid assignment target");
+                }
+            } else {
+                increment = new ExpressionStatement(expr);
+            }
         }
         consume(Lexer.TokenType.RPAREN, "Expected ')' after for clauses");
 
@@ -525,6 +1548,27 @@ class Parser {
         return new ForStatement(initializer, condition, increment, body);
     }
 
+    private ParallelForStatement parallelForStatement() {
+        List<Reduction> reductions = new ArrayList<>();
+
+        while (match(Lexer.TokenType.REDUCE)) {
+            consume(Lexer.TokenType.LPAREN, "Expected '(' after 'reduce'");
+            if (!match(Lexer.TokenType.PLUS, Lexer.TokenType.STAR, Lexer.TokenType.AND, Lexer.TokenType.OR)) {
+                error(peek(), "Expected reduction operator (+, *, &&, ||)");
+            }
+            Lexer.TokenType operator = previous().type;
+            consume(Lexer.TokenType.COLON, "Expected ':' after reduction operator");
+            do {
+                Token name = consume(Lexer.TokenType.IDENTIFIER, "Expected reduction variable name");
+                reductions.add(new Reduction(operator, name.value));
+            } while (match(Lexer.TokenType.COMMA));
+            consume(Lexer.TokenType.RPAREN, "Expected ')' after reduction variables");
+        }
+
+        consume(Lexer.TokenType.FOR, "Expected 'for' after 'parallel'");
+        return new ParallelForStatement(reductions, forStatement());
+    }
+
     private ReturnStatement returnStatement() {
         Expression value = null;
         if (!check(Lexer.TokenType.SEMICOLON)) {
@@ -555,7 +1599,7 @@ class Parser {
                 consume(Lexer.TokenType.SEMICOLON, "Expected ';' after assignment");
                 return new Assignment(((Identifier) expr).name, value);
             }
-            throw new RuntimeException("Invalid assignment target");
+            error(previous(), "Invalid assignment target");
         }
 
         consume(Lexer.TokenType.SEMICOLON, "Expected ';' after expression");
@@ -647,6 +1691,19 @@ class Parser {
             return new UnaryOperation(operator, right);
         }
 
+        if (match(Lexer.TokenType.SPAWN)) {
+            Expression target = call();
+            if (!(target instanceof FunctionCall)) {
+                error(peek(), "Expected function call after 'spawn'");
+                return target;
+            }
+            return new SpawnExpression((FunctionCall) target);
+        }
+
+        if (match(Lexer.TokenType.AWAIT)) {
+            return new AwaitExpression(unary());
+        }
+
         return call();
     }
 
@@ -684,7 +1741,8 @@ class Parser {
         }
 
         if (match(Lexer.TokenType.IDENTIFIER)) {
-            return new Identifier(previous().value);
+            Token name = previous();
+            return new Identifier(name.value, name.symbol);
         }
 
         if (match(Lexer.TokenType.LPAREN)) {
@@ -693,22 +1751,22 @@ class Parser {
             return expr;
         }
 
-        throw new RuntimeException("Expected expression at " + peek());
+        error(peek(), "Expected expression");
+        // Zaślepka w miejscu brakującego wyrażenia; instrukcja i tak nie trafi do wykonania
+        return new NumberLiteral("0");
     }
 
+    // Pomija tokeny do granicy instrukcji: za ';', przed słowem kluczowym albo przed '}'
+    // (ten zamyka otaczający blok, więc zostaje dla block())
     private void synchronize() {
-        advance();
-
         while (!isAtEnd()) {
-            if (previous().type == Lexer.TokenType.SEMICOLON) return;
-
             switch (peek().type) {
-                case CLASS, FN, IF, WHILE, FOR, RETURN -> {
+                case CLASS, FN, CACHED, IF, WHILE, FOR, PARALLEL, RETURN, IMPORT, RBRACE -> {
                     return;
                 }
             }
 
-            advance();
+            if (advance().type == Lexer.TokenType.SEMICOLON) return;
         }
     }
 }
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ===== MODUŁ SKOMPILOWANY =====
+// Wynik parsowania, optymalizacji i analizy czystości jednego pliku. Niemutowalny po utworzeniu,
+// więc jedna kopia jest współdzielona przez wszystkie interpretery procesu (także równoległe).
+// Instrukcje najwyższego poziomu są rozdzielone: importy i funkcje obsługuje import,
+// resztę (initializer) - pierwsze wywołanie którejś z funkcji modułu.
+final class CompiledModule {
+    // Poziom optymalizacji modułów (jak domyślne -O1)
+    private static final int OPTIMIZATION_LEVEL = 1;
+
+    final Path path;
+    final Path directory;
+    final FileTime lastModified;
+    final long size;
+    final List<String> imports;
+    final List<FunctionDeclaration> functions;
+    final List<Statement> initializer;
+
+    private CompiledModule(Path path, BasicFileAttributes attributes, List<String> imports,
+                           List<FunctionDeclaration> functions, List<Statement> initializer) {
+        this.path = path;
+        this.directory = path.getParent();
+        this.lastModified = attributes.lastModifiedTime();
+        this.size = attributes.size();
+        this.imports = List.copyOf(imports);
+        this.functions = List.copyOf(functions);
+        this.initializer = List.copyOf(initializer);
+    }
+
+    static CompiledModule compile(Path path, BasicFileAttributes attributes) {
+        Program program;
+        try {
+            String code = Files.readString(path);
+            program = new Parser(Token.tokenize(code)).parse();
+        } catch (IOException e) {
+            throw new RuntimeError("Cannot read module " + path + ": " + e.getMessage());
+        } catch (RuntimeError e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RuntimeError("Error in module " + path + ": " + e.getMessage());
+        }
+        program = new Optimizer(OPTIMIZATION_LEVEL).optimize(program);
+        // Funkcje spoza modułu (poza czystymi wbudowanymi) uznajemy za nieczyste - importer może je dowolnie nadpisać
+        PurityAnalysis.analyze(program);
+
+        List<String> imports = new ArrayList<>();
+        List<FunctionDeclaration> functions = new ArrayList<>();
+        List<Statement> initializer = new ArrayList<>();
+        for (Statement statement : program.statements) {
+            if (statement instanceof ImportStatement i) imports.add(i.path);
+            else if (statement instanceof FunctionDeclaration f) functions.add(f);
+            else initializer.add(statement);
+        }
+        return new CompiledModule(path, attributes, imports, functions, initializer);
+    }
+
+    boolean isCurrent(BasicFileAttributes attributes) {
+        return lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+    }
+}
+
+// ===== PAMIĘĆ MODUŁÓW PROCESU =====
+// Klucz to ścieżka bezwzględna; wpis jest ważny, dopóki plik ma ten sam czas modyfikacji
+// i rozmiar. Każdy import kosztuje jedno odczytanie atrybutów pliku, parsowanie tylko po zmianie.
+final class ModuleCache {
+    static final ModuleCache SHARED = new ModuleCache();
+
+    private final Map<Path, CompiledModule> modules = new ConcurrentHashMap<>();
+
+    CompiledModule get(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new RuntimeError("Module not found: " + path);
+        }
+        CompiledModule cached = modules.get(path);
+        if (cached != null && cached.isCurrent(attributes)) return cached;
+        // compute: równoległe importy tego samego pliku kompilują go raz
+        return modules.compute(path, (key, current) ->
+                current != null && current.isCurrent(attributes) ? current : CompiledModule.compile(key, attributes));
+    }
+}
+
+// ===== MODUŁ W INTERPRETERZE =====
+// Stan modułu w jednym interpreterze: własne zmienne globalne (niewidoczne dla importera)
+// i znacznik inicjalizacji. Kod najwyższego poziomu wykonuje się raz, przy pierwszym wywołaniu
+// funkcji modułu; wątek, który go wykonuje, może w tym czasie wołać funkcje modułu.
+// Błąd w kodzie najwyższego poziomu oznacza moduł na stałe: kolejne wywołania jego funkcji
+// kończą się tym samym błędem, bez ponownego wykonywania połowy inicjalizacji.
+final class ModuleInstance {
+    final CompiledModule module;
+    final GlobalEnvironment globals = new GlobalEnvironment();
+    volatile boolean initialized;
+    // Tylko pod blokadą na tym obiekcie
+    boolean initializing;
+    RuntimeException failure;
+
+    ModuleInstance(CompiledModule module) {
+        this.module = module;
+    }
+}
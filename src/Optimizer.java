@@ -0,0 +1,733 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Potok optymalizacji AST uruchamiany między Parser.parse() a interpreter.interpret()
+ * Poziomy: 0 - bez zmian, 1 - bezpieczne usuwanie martwego kodu i superinstrukcje, 2 - dodatkowo
+ * redukcja mocy i wynoszenie niezmienników pętli
+ */
+class Optimizer {
+    private final List<OptimizationPass> passes = new ArrayList<>();
+
+    Optimizer(int level) {
+        if (level >= 1) {
+            passes.add(new UnreachableCodeElimination());
+            passes.add(new ConstantBranchElimination());
+        }
+        if (level >= 2) {
+            passes.add(new StrengthReduction());
+            passes.add(new LoopInvariantHoisting());
+        }
+        if (level >= 1) {
+            // Zawsze jako ostatni: zamienia gotowe drzewo na superinstrukcje
+            passes.add(new SuperinstructionFusion());
+        }
+    }
+
+    Optimizer addPass(OptimizationPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    Program optimize(Program program) {
+        for (OptimizationPass pass : passes) {
+            program = pass.run(program);
+        }
+        return program;
+    }
+}
+
+interface OptimizationPass {
+    Program run(Program program);
+}
+
+// ===== BAZOWY PRZEPISYWACZ AST =====
+// Węzły AST są niemutowalne, więc przebiegi budują nowe drzewo.
+// Domyślnie każdy węzeł jest odtwarzany z przepisanymi dziećmi. Nowe instrukcje dostają linię
+// instrukcji, z której powstały (diagnostyka, pokrycie, debugger).
+abstract class AstRewriter implements OptimizationPass {
+    @Override
+    public Program run(Program program) {
+        return new Program(statements(program.statements));
+    }
+
+    List<Statement> statements(List<Statement> list) {
+        if (list == null) return null;
+        List<Statement> out = new ArrayList<>(list.size());
+        for (Statement s : list) {
+            int from = out.size();
+            statement(s, out);
+            for (int i = from; i < out.size(); i++) {
+                lineOf(out.get(i), s);
+            }
+        }
+        return out;
+    }
+
+    // Linia oryginału dla instrukcji bez linii; zwraca instrukcję
+    static <T extends Statement> T lineOf(T statement, Statement original) {
+        if (statement != null && original != null && statement.line == 0) statement.line = original.line;
+        return statement;
+    }
+
+    // Instrukcja może zostać zastąpiona zerem lub kilkoma instrukcjami
+    void statement(Statement s, List<Statement> out) {
+        out.add(rewrite(s));
+    }
+
+    Statement rewrite(Statement s) {
+        return lineOf(rebuild(s), s);
+    }
+
+    private Statement rebuild(Statement s) {
+        if (s == null) return null;
+        if (s instanceof VariableDeclaration d) {
+            return new VariableDeclaration(d.type, d.name, expression(d.initializer));
+        } else if (s instanceof Assignment a) {
+            return new Assignment(a.name, expression(a.value));
+        } else if (s instanceof IfStatement i) {
+            return new IfStatement(expression(i.condition), statements(i.thenBranch), statements(i.elseBranch));
+        } else if (s instanceof WhileStatement w) {
+            return new WhileStatement(expression(w.condition), statements(w.body));
+        } else if (s instanceof ForStatement f) {
+            return rewriteFor(f);
+        } else if (s instanceof ParallelForStatement p) {
+            return new ParallelForStatement(p.reductions, rewriteFor(p.loop));
+        } else if (s instanceof ReturnStatement r) {
+            return new ReturnStatement(expression(r.value));
+        } else if (s instanceof ExpressionStatement e) {
+            return new ExpressionStatement(expression(e.expression));
+        } else if (s instanceof BlockStatement b) {
+            return new BlockStatement(statements(b.statements));
+        } else if (s instanceof FunctionDeclaration f) {
+            if (f.lazyBody != null) {
+                // Przebieg zostanie wykonany na ciele zaraz po jego sparsowaniu
+                return new FunctionDeclaration(f.returnType, f.name, f.parameters, null, f.cached,
+                        f.lazyBody.map(this::statements));
+            }
+            return new FunctionDeclaration(f.returnType, f.name, f.parameters, statements(f.body), f.cached);
+        }
+        return s;
+    }
+
+    final ForStatement rewriteFor(ForStatement f) {
+        return new ForStatement(rewrite(f.initializer), expression(f.condition), rewrite(f.increment), statements(f.body));
+    }
+
+    Expression expression(Expression e) {
+        if (e instanceof BinaryOperation b) {
+            return new BinaryOperation(expression(b.left), b.operator, expression(b.right));
+        } else if (e instanceof UnaryOperation u) {
+            return new UnaryOperation(u.operator, expression(u.operand));
+        } else if (e instanceof FunctionCall c) {
+            return rewriteCall(c);
+        } else if (e instanceof SpawnExpression sp) {
+            return new SpawnExpression(rewriteCall(sp.call));
+        } else if (e instanceof AwaitExpression aw) {
+            return new AwaitExpression(expression(aw.task));
+        }
+        return e;
+    }
+
+    final FunctionCall rewriteCall(FunctionCall c) {
+        List<Expression> args = new ArrayList<>(c.arguments.size());
+        for (Expression arg : c.arguments) {
+            args.add(expression(arg));
+        }
+        return new FunctionCall(c.functionName, args);
+    }
+}
+
+// ===== -O1: instrukcje po return nigdy się nie wykonają =====
+class UnreachableCodeElimination extends AstRewriter {
+    @Override
+    List<Statement> statements(List<Statement> list) {
+        List<Statement> out = super.statements(list);
+        if (out == null) return null;
+        for (int i = 0; i < out.size(); i++) {
+            if (out.get(i) instanceof ReturnStatement) {
+                return new ArrayList<>(out.subList(0, i + 1));
+            }
+        }
+        return out;
+    }
+}
+
+// ===== -O1: if (true/false) i while (false) =====
+// Gałęzie if wykonują się w bieżącym środowisku, więc można je wkleić w miejsce if.
+class ConstantBranchElimination extends AstRewriter {
+    @Override
+    void statement(Statement s, List<Statement> out) {
+        Statement r = rewrite(s);
+        if (r instanceof IfStatement i && i.condition instanceof BooleanLiteral c) {
+            List<Statement> branch = c.value ? i.thenBranch : i.elseBranch;
+            if (branch != null) out.addAll(branch);
+            return;
+        }
+        if (r instanceof WhileStatement w && w.condition instanceof BooleanLiteral c && !c.value) {
+            return;
+        }
+        out.add(r);
+    }
+
+    @Override
+    Expression expression(Expression e) {
+        Expression r = super.expression(e);
+        if (r instanceof UnaryOperation u && u.operator == Lexer.TokenType.BANG
+                && u.operand instanceof BooleanLiteral b) {
+            return new BooleanLiteral(!b.value);
+        }
+        return r;
+    }
+}
+
+// ===== -O2: x * 2 -> x + x =====
+// Typ z deklaracji nie jest egzekwowany (int64 x = 3 ; x = "ab" jest poprawne), a dla napisu
+// + to konkatenacja, a * jest błędem. Dlatego tylko dla zmiennych, których każda deklaracja
+// w programie ma typ liczbowy i literał liczbowy jako wartość, i których nic nie przypisuje
+// (parametry mogą dostać dowolną wartość). W ciele funkcji tylko dla jej własnych zmiennych
+// lokalnych - zmienną globalną może przypisać późniejsza linia REPL, zanim funkcja zostanie
+// wywołana. Nazwy spoza programu (wcześniejsze linie REPL) są nieznane i zostają bez zmian.
+class StrengthReduction extends AstRewriter {
+    private static final Set<Lexer.TokenType> NUMERIC = Set.of(Lexer.TokenType.INT32, Lexer.TokenType.INT64,
+            Lexer.TokenType.INT128, Lexer.TokenType.LONG, Lexer.TokenType.DOUBLE, Lexer.TokenType.FLOAT);
+
+    private final Set<String> numeric = new HashSet<>();
+    private final Set<String> other = new HashSet<>();
+    private boolean unparsedFunctions;
+    // Zmienne lokalne przepisywanej funkcji; null na najwyższym poziomie
+    private Set<String> locals;
+
+    @Override
+    public Program run(Program program) {
+        collectTypes(program.statements);
+        numeric.removeAll(other);
+        if (unparsedFunctions) numeric.clear();
+        return super.run(program);
+    }
+
+    @Override
+    Statement rewrite(Statement s) {
+        if (!(s instanceof FunctionDeclaration f)) return super.rewrite(s);
+        Set<String> saved = locals;
+        locals = new HashSet<>();
+        collectLocals(f.body, locals);
+        try {
+            return super.rewrite(s);
+        } finally {
+            locals = saved;
+        }
+    }
+
+    @Override
+    Expression expression(Expression e) {
+        Expression r = super.expression(e);
+        if (r instanceof BinaryOperation b && b.operator == Lexer.TokenType.STAR) {
+            if (isNumeric(b.left) && isTwo(b.right)) {
+                return new BinaryOperation(b.left, Lexer.TokenType.PLUS, b.left);
+            }
+            if (isNumeric(b.right) && isTwo(b.left)) {
+                return new BinaryOperation(b.right, Lexer.TokenType.PLUS, b.right);
+            }
+        }
+        return r;
+    }
+
+    private boolean isNumeric(Expression e) {
+        return e instanceof Identifier id && numeric.contains(id.name)
+                && (locals == null || locals.contains(id.name));
+    }
+
+    private void collectTypes(List<Statement> statements) {
+        if (statements == null) return;
+        for (Statement s : statements) collectTypes(s);
+    }
+
+    private void collectTypes(Statement s) {
+        if (s instanceof ProbeStatement p) {
+            collectTypes(p.statement);
+        } else if (s instanceof VariableDeclaration d) {
+            boolean literal = NUMERIC.contains(d.type) && d.initializer instanceof NumberLiteral;
+            (literal ? numeric : other).add(d.name);
+        } else if (s instanceof Assignment a) {
+            other.add(a.name);
+        } else if (s instanceof IfStatement i) {
+            collectTypes(i.thenBranch);
+            collectTypes(i.elseBranch);
+        } else if (s instanceof WhileStatement w) {
+            collectTypes(w.body);
+        } else if (s instanceof ForStatement f) {
+            collectTypes(f.initializer);
+            collectTypes(f.increment);
+            collectTypes(f.body);
+        } else if (s instanceof ParallelForStatement p) {
+            for (Reduction r : p.reductions) other.add(r.name);
+            collectTypes(p.loop);
+        } else if (s instanceof BlockStatement b) {
+            collectTypes(b.statements);
+        } else if (s instanceof FunctionDeclaration f) {
+            for (Parameter parameter : f.parameters) other.add(parameter.name);
+            // Ciało jeszcze niesparsowane (tryb leniwy) - jego deklaracje są nieznane
+            if (f.lazyBody != null) unparsedFunctions = true;
+            collectTypes(f.body);
+        }
+    }
+
+    private static void collectLocals(List<Statement> statements, Set<String> out) {
+        if (statements == null) return;
+        for (Statement s : statements) {
+            if (s instanceof ProbeStatement p) s = p.statement;
+            if (s instanceof VariableDeclaration d) {
+                out.add(d.name);
+            } else if (s instanceof IfStatement i) {
+                collectLocals(i.thenBranch, out);
+                collectLocals(i.elseBranch, out);
+            } else if (s instanceof WhileStatement w) {
+                collectLocals(w.body, out);
+            } else if (s instanceof ForStatement f) {
+                if (f.initializer != null) collectLocals(List.of(f.initializer), out);
+                collectLocals(f.body, out);
+            } else if (s instanceof ParallelForStatement p) {
+                collectLocals(List.of(p.loop), out);
+            } else if (s instanceof BlockStatement b) {
+                collectLocals(b.statements, out);
+            }
+        }
+    }
+
+    private boolean isTwo(Expression e) {
+        return e instanceof NumberLiteral n && n.value.equals("2");
+    }
+}
+
+// ===== -O2: wynoszenie niezmienników pętli =====
+// Niezmiennik: operacja na literałach i zmiennych, których pętla nie przypisuje ani nie deklaruje,
+// bez wywołań funkcji i bez / oraz % (mogłyby rzucić błąd, którego oryginał by nie rzucił).
+// Jeśli pętla wywołuje funkcje, zmiennymi zmiennymi są też wszystkie przypisywane w ciałach funkcji;
+// gdy któreś ciało nie jest jeszcze sparsowane (tryb leniwy) albo pętla woła funkcję spoza programu
+// (zadeklarowaną we wcześniejszej linii REPL, z modułu, wbudowaną, którą można przesłonić),
+// pętli z wywołaniami nie ruszamy.
+// Wynoszone są wyrażenia z warunku i z instrukcji najwyższego poziomu ciała, liczone raz pod
+// strażnikiem z oryginalnym warunkiem. Strażnik liczy warunek (i inicjalizację for) jeden raz
+// więcej niż oryginał, więc pętli z wywołaniem w warunku lub inicjalizacji nie ruszamy. Blok
+// trzyma $invN lokalnie (nie trafiają do zmiennych globalnych, debuggera ani save), a for
+// zachowuje inicjalizację, żeby dalej był rozpoznawany jako CountedLoop:
+//   while (c) { B }          ->  { if (c) { $inv0 = e; while (c') { B' } } }
+//   for (init; c; inc) { B } ->  { init; if (c) { $inv0 = e; for (init; c'; inc) { B' } } }
+class LoopInvariantHoisting extends AstRewriter {
+    private final Set<String> assignedInFunctions = new HashSet<>();
+    private final Set<String> declaredFunctions = new HashSet<>();
+    private boolean unparsedFunctions;
+    private int counter = 0;
+
+    @Override
+    public Program run(Program program) {
+        for (Statement s : program.statements) {
+            collectFunctionAssignments(s, false);
+        }
+        return super.run(program);
+    }
+
+    @Override
+    Statement rewrite(Statement s) {
+        Statement r = super.rewrite(s);
+        if (r instanceof WhileStatement w) {
+            return hoistWhile(w);
+        }
+        if (r instanceof ForStatement f) {
+            return hoistFor(f);
+        }
+        return r;
+    }
+
+    private Statement hoistWhile(WhileStatement w) {
+        if (hasCalls(w.condition)) return w;
+        Set<String> variant = variantNames(w.condition, w.body, null, null);
+        if (variant == null) return w;
+        List<Statement> hoisted = new ArrayList<>();
+        Expression condition = hoist(w.condition, variant, hoisted);
+        List<Statement> body = hoistBody(w.body, variant, hoisted);
+        if (hoisted.isEmpty()) return w;
+
+        hoisted.add(new WhileStatement(condition, body));
+        for (Statement s : hoisted) lineOf(s, w);
+        List<Statement> block = new ArrayList<>();
+        block.add(lineOf(new IfStatement(w.condition, hoisted, null), w));
+        return new BlockStatement(block);
+    }
+
+    private Statement hoistFor(ForStatement f) {
+        if (hasCalls(f.condition) || hasCalls(f.initializer)) return f;
+        Set<String> variant = variantNames(f.condition, f.body, f.initializer, f.increment);
+        if (variant == null) return f;
+        List<Statement> hoisted = new ArrayList<>();
+        Expression condition = hoist(f.condition, variant, hoisted);
+        List<Statement> body = hoistBody(f.body, variant, hoisted);
+        if (hoisted.isEmpty()) return f;
+
+        hoisted.add(new ForStatement(f.initializer, condition, f.increment, body));
+        for (Statement s : hoisted) lineOf(s, f);
+        List<Statement> block = new ArrayList<>();
+        if (f.condition != null) {
+            if (f.initializer != null) block.add(f.initializer);
+            block.add(new IfStatement(f.condition, hoisted, null));
+        } else {
+            block.addAll(hoisted);
+        }
+        for (Statement s : block) lineOf(s, f);
+        return new BlockStatement(block);
+    }
+
+    private boolean hasCalls(Expression e) {
+        boolean[] calls = new boolean[2];
+        collectExpression(e, new HashSet<>(), calls);
+        return calls[0];
+    }
+
+    private boolean hasCalls(Statement s) {
+        boolean[] calls = new boolean[2];
+        collectStatement(s, new HashSet<>(), calls);
+        return calls[0];
+    }
+
+    private List<Statement> hoistBody(List<Statement> body, Set<String> variant, List<Statement> hoisted) {
+        List<Statement> out = new ArrayList<>(body.size());
+        for (Statement s : body) {
+            if (s instanceof VariableDeclaration d && d.initializer != null) {
+                out.add(lineOf(new VariableDeclaration(d.type, d.name, hoist(d.initializer, variant, hoisted)), s));
+            } else if (s instanceof Assignment a) {
+                out.add(lineOf(new Assignment(a.name, hoist(a.value, variant, hoisted)), s));
+            } else if (s instanceof ExpressionStatement e) {
+                out.add(lineOf(new ExpressionStatement(hoist(e.expression, variant, hoisted)), s));
+            } else {
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    // Zastępuje maksymalne niezmiennicze podwyrażenia tymczasowymi zmiennymi
+    private Expression hoist(Expression e, Set<String> variant, List<Statement> hoisted) {
+        if (e == null) return null;
+        if ((e instanceof BinaryOperation || e instanceof UnaryOperation) && isInvariant(e, variant)) {
+            String name = "$inv" + counter++;
+            hoisted.add(new VariableDeclaration(null, name, e));
+            return new Identifier(name);
+        }
+        if (e instanceof BinaryOperation b) {
+            return new BinaryOperation(hoist(b.left, variant, hoisted), b.operator, hoist(b.right, variant, hoisted));
+        }
+        if (e instanceof UnaryOperation u) {
+            return new UnaryOperation(u.operator, hoist(u.operand, variant, hoisted));
+        }
+        return e;
+    }
+
+    private boolean isInvariant(Expression e, Set<String> variant) {
+        if (e instanceof NumberLiteral || e instanceof StringLiteral || e instanceof BooleanLiteral) {
+            return true;
+        }
+        if (e instanceof Identifier id) {
+            return !variant.contains(id.name);
+        }
+        if (e instanceof BinaryOperation b) {
+            if (b.operator == Lexer.TokenType.SLASH || b.operator == Lexer.TokenType.MOD) return false;
+            return isInvariant(b.left, variant) && isInvariant(b.right, variant);
+        }
+        if (e instanceof UnaryOperation u) {
+            return isInvariant(u.operand, variant);
+        }
+        return false;
+    }
+
+    // null, gdy pętla wywołuje funkcje, a nie wszystkie ciała wywoływanych funkcji są znane.
+    // calls[0] - pętla coś wywołuje, calls[1] - wywołuje funkcję spoza programu (albo czeka na zadanie)
+    private Set<String> variantNames(Expression condition, List<Statement> body, Statement init, Statement inc) {
+        Set<String> names = new HashSet<>();
+        boolean[] calls = new boolean[2];
+        collectExpression(condition, names, calls);
+        collectStatement(init, names, calls);
+        collectStatement(inc, names, calls);
+        for (Statement s : body) {
+            collectStatement(s, names, calls);
+        }
+        if (calls[0]) {
+            if (unparsedFunctions || calls[1]) return null;
+            names.addAll(assignedInFunctions);
+        }
+        return names;
+    }
+
+    private void collectStatement(Statement s, Set<String> names, boolean[] calls) {
+        if (s == null) return;
+        if (s instanceof VariableDeclaration d) {
+            names.add(d.name);
+            collectExpression(d.initializer, names, calls);
+        } else if (s instanceof Assignment a) {
+            names.add(a.name);
+            collectExpression(a.value, names, calls);
+        } else if (s instanceof IfStatement i) {
+            collectExpression(i.condition, names, calls);
+            collectStatements(i.thenBranch, names, calls);
+            collectStatements(i.elseBranch, names, calls);
+        } else if (s instanceof WhileStatement w) {
+            collectExpression(w.condition, names, calls);
+            collectStatements(w.body, names, calls);
+        } else if (s instanceof ForStatement f) {
+            collectStatement(f.initializer, names, calls);
+            collectExpression(f.condition, names, calls);
+            collectStatement(f.increment, names, calls);
+            collectStatements(f.body, names, calls);
+        } else if (s instanceof ParallelForStatement p) {
+            for (Reduction r : p.reductions) names.add(r.name);
+            collectStatement(p.loop, names, calls);
+        } else if (s instanceof ReturnStatement r) {
+            collectExpression(r.value, names, calls);
+        } else if (s instanceof ExpressionStatement e) {
+            collectExpression(e.expression, names, calls);
+        } else if (s instanceof BlockStatement b) {
+            collectStatements(b.statements, names, calls);
+        } else if (s instanceof FunctionDeclaration) {
+            calls[0] = true;
+        }
+    }
+
+    private void collectStatements(List<Statement> list, Set<String> names, boolean[] calls) {
+        if (list == null) return;
+        for (Statement s : list) {
+            collectStatement(s, names, calls);
+        }
+    }
+
+    private void collectExpression(Expression e, Set<String> names, boolean[] calls) {
+        if (e instanceof BinaryOperation b) {
+            collectExpression(b.left, names, calls);
+            collectExpression(b.right, names, calls);
+        } else if (e instanceof UnaryOperation u) {
+            collectExpression(u.operand, names, calls);
+        } else if (e instanceof FunctionCall || e instanceof SpawnExpression || e instanceof AwaitExpression) {
+            calls[0] = true;
+            FunctionCall call = e instanceof FunctionCall c ? c : e instanceof SpawnExpression sp ? sp.call : null;
+            // Zastrzeżone wbudowane (wyjście, kanały) nie przypisują zmiennych i nie da się ich przesłonić
+            if (call == null || !declaredFunctions.contains(call.functionName) && !Builtins.isReserved(call.symbol)) {
+                calls[1] = true;
+            }
+            List<Expression> args = call != null ? call.arguments : List.of(((AwaitExpression) e).task);
+            for (Expression arg : args) {
+                collectExpression(arg, names, calls);
+            }
+        }
+    }
+
+    private void collectFunctionAssignments(Statement s, boolean insideFunction) {
+        if (s instanceof FunctionDeclaration f) {
+            declaredFunctions.add(f.name);
+            if (f.body == null) {
+                unparsedFunctions = true;
+                return;
+            }
+            for (Statement b : f.body) collectFunctionAssignments(b, true);
+        } else if (s instanceof Assignment a) {
+            if (insideFunction) assignedInFunctions.add(a.name);
+        } else if (s instanceof IfStatement i) {
+            for (Statement b : i.thenBranch) collectFunctionAssignments(b, insideFunction);
+            if (i.elseBranch != null) {
+                for (Statement b : i.elseBranch) collectFunctionAssignments(b, insideFunction);
+            }
+        } else if (s instanceof WhileStatement w) {
+            for (Statement b : w.body) collectFunctionAssignments(b, insideFunction);
+        } else if (s instanceof ForStatement f) {
+            collectFunctionAssignments(f.initializer, insideFunction);
+            collectFunctionAssignments(f.increment, insideFunction);
+            for (Statement b : f.body) collectFunctionAssignments(b, insideFunction);
+        } else if (s instanceof ParallelForStatement p) {
+            collectFunctionAssignments(p.loop, insideFunction);
+        } else if (s instanceof BlockStatement b) {
+            for (Statement st : b.statements) collectFunctionAssignments(st, insideFunction);
+        }
+    }
+}
+
+// ===== -O1: superinstrukcje =====
+// Najczęstsze kształty (x = x + c, a < b, return a op b, f(a, b)) zamieniane na węzły,
+// które interpreter wykonuje bez pośrednich evaluate() i bez tymczasowych Value.
+class SuperinstructionFusion extends AstRewriter {
+    @Override
+    Statement rewrite(Statement s) {
+        Statement r = super.rewrite(s);
+        if (r instanceof Assignment a && a.value instanceof BinaryOperation b
+                && b.left instanceof Identifier id && id.name.equals(a.name)
+                && (b.operator == Lexer.TokenType.PLUS || b.operator == Lexer.TokenType.MINUS)
+                && b.right instanceof NumberLiteral n && isInteger(n.value)) {
+            long delta = Long.parseLong(n.value);
+            return new IncrementLocal(a.name, b, b.operator == Lexer.TokenType.PLUS ? delta : -delta);
+        }
+        if (r instanceof ReturnStatement ret && ret.value instanceof BinaryOperation b) {
+            return new ReturnBinary(b);
+        }
+        return r;
+    }
+
+    @Override
+    Expression expression(Expression e) {
+        Expression r = super.expression(e);
+        if (r instanceof BinaryOperation b && isComparison(b.operator) && b.left instanceof Identifier left) {
+            if (b.right instanceof Identifier right) {
+                return new CompareLocals(left, b.operator, right);
+            }
+            if (b.right instanceof NumberLiteral n && isInteger(n.value)) {
+                return new CompareLocalConstant(left, b.operator, n, Long.parseLong(n.value));
+            }
+        }
+        if (r instanceof FunctionCall c && !c.arguments.isEmpty()) {
+            for (Expression arg : c.arguments) {
+                if (!(arg instanceof Identifier)) return r;
+            }
+            return new CallLocals(c.functionName, c.arguments);
+        }
+        return r;
+    }
+
+    private boolean isComparison(Lexer.TokenType op) {
+        return switch (op) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL_EQUAL, BANG_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private boolean isInteger(String literal) {
+        return !literal.contains(".") && literal.length() < 19;
+    }
+}
+
+// ===== ZRZUT AST (--dump-ast) =====
+class AstPrinter {
+    private final StringBuilder sb = new StringBuilder();
+
+    static String print(Program program) {
+        AstPrinter printer = new AstPrinter();
+        printer.line(0, "Program");
+        printer.statements(1, program.statements);
+        return printer.sb.toString();
+    }
+
+    private void line(int depth, String text) {
+        sb.append("  ".repeat(depth)).append(text).append('\n');
+    }
+
+    private static String argumentNames(CallLocals call) {
+        List<String> names = new ArrayList<>(call.argumentSymbols.length);
+        for (int symbol : call.argumentSymbols) names.add(Symbols.name(symbol));
+        return String.join(", ", names);
+    }
+
+    private void statements(int depth, List<Statement> list) {
+        for (Statement s : list) {
+            statement(depth, s);
+        }
+    }
+
+    private void statement(int depth, Statement s) {
+        if (s instanceof VariableDeclaration d) {
+            line(depth, "VariableDeclaration " + (d.type != null ? d.type : "auto") + " " + d.name);
+            if (d.initializer != null) expression(depth + 1, d.initializer);
+        } else if (s instanceof IncrementLocal inc) {
+            line(depth, "IncrementLocal " + inc.name + " " + (inc.delta >= 0 ? "+" : "") + inc.delta);
+        } else if (s instanceof Assignment a) {
+            line(depth, "Assignment " + a.name);
+            expression(depth + 1, a.value);
+        } else if (s instanceof IfStatement i) {
+            line(depth, "If");
+            expression(depth + 1, i.condition);
+            line(depth, "Then");
+            statements(depth + 1, i.thenBranch);
+            if (i.elseBranch != null) {
+                line(depth, "Else");
+                statements(depth + 1, i.elseBranch);
+            }
+        } else if (s instanceof WhileStatement w) {
+            line(depth, "While");
+            expression(depth + 1, w.condition);
+            line(depth, "Do");
+            statements(depth + 1, w.body);
+        } else if (s instanceof ForStatement f) {
+            line(depth, "For");
+            if (f.initializer != null) statement(depth + 1, f.initializer);
+            if (f.condition != null) expression(depth + 1, f.condition);
+            if (f.increment != null) statement(depth + 1, f.increment);
+            line(depth, "Do");
+            statements(depth + 1, f.body);
+        } else if (s instanceof ParallelForStatement p) {
+            StringBuilder header = new StringBuilder("ParallelFor");
+            for (Reduction r : p.reductions) header.append(" reduce(").append(r.operator).append(':').append(r.name).append(')');
+            line(depth, header.toString());
+            statement(depth + 1, p.loop);
+        } else if (s instanceof ReturnBinary r) {
+            line(depth, "ReturnBinary");
+            expression(depth + 1, r.operation);
+        } else if (s instanceof ReturnStatement r) {
+            line(depth, "Return");
+            if (r.value != null) expression(depth + 1, r.value);
+        } else if (s instanceof ExpressionStatement e) {
+            line(depth, "ExpressionStatement");
+            expression(depth + 1, e.expression);
+        } else if (s instanceof BlockStatement b) {
+            line(depth, "Block");
+            statements(depth + 1, b.statements);
+        } else if (s instanceof FunctionDeclaration f) {
+            StringBuilder header = new StringBuilder((f.cached ? "Cached Function " : "Function ") + f.returnType + " " + f.name + "(");
+            for (int i = 0; i < f.parameters.size(); i++) {
+                if (i > 0) header.append(", ");
+                header.append(f.parameters.get(i).type).append(' ').append(f.parameters.get(i).name);
+            }
+            line(depth, header.append(')').toString());
+            if (f.lazyBody != null) {
+                line(depth + 1, "<unparsed body, " + f.lazyBody.tokenCount() + " tokens>");
+            } else {
+                statements(depth + 1, f.body);
+            }
+        } else if (s instanceof ImportStatement i) {
+            line(depth, "Import \"" + i.path + "\"");
+        } else {
+            line(depth, s.getClass().getSimpleName());
+        }
+    }
+
+    private void expression(int depth, Expression e) {
+        if (e instanceof NumberLiteral n) {
+            line(depth, "Number " + n.value);
+        } else if (e instanceof StringLiteral s) {
+            line(depth, "String \"" + s.value + "\"");
+        } else if (e instanceof BooleanLiteral b) {
+            line(depth, "Bool " + b.value);
+        } else if (e instanceof Identifier id) {
+            line(depth, "Identifier " + id.name);
+        } else if (e instanceof CompareLocals c) {
+            line(depth, "CompareLocals " + Symbols.name(c.leftSymbol) + " " + c.operator + " " + Symbols.name(c.rightSymbol));
+        } else if (e instanceof CompareLocalConstant c) {
+            line(depth, "CompareLocalConstant " + Symbols.name(c.leftSymbol) + " " + c.operator + " " + c.constant);
+        } else if (e instanceof BinaryOperation b) {
+            line(depth, "Binary " + b.operator);
+            expression(depth + 1, b.left);
+            expression(depth + 1, b.right);
+        } else if (e instanceof UnaryOperation u) {
+            line(depth, "Unary " + u.operator);
+            expression(depth + 1, u.operand);
+        } else if (e instanceof CallLocals c) {
+            line(depth, "CallLocals " + c.functionName + "(" + argumentNames(c) + ")");
+        } else if (e instanceof FunctionCall c) {
+            line(depth, "Call " + c.functionName);
+            for (Expression arg : c.arguments) expression(depth + 1, arg);
+        } else if (e instanceof SpawnExpression sp) {
+            line(depth, "Spawn");
+            expression(depth + 1, sp.call);
+        } else if (e instanceof AwaitExpression aw) {
+            line(depth, "Await");
+            expression(depth + 1, aw.task);
+        } else {
+            line(depth, e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Binarny zapis sesji REPL (save / load): zmienne globalne, tablica funkcji i ich ciała.
+ * Plik: nagłówek, nazwy symboli, zmienne globalne, funkcje jako płaskie AST (AstArena).
+ * Odczyt mapuje plik do pamięci i wczytuje tablice areny hurtowo; funkcje wykonują się wprost
+ * z areny, bez odtwarzania drzewa obiektów. Numery symboli są lokalne dla procesu, więc przy
+ * odczycie są przenumerowywane. Funkcje z modułów nie są zapisywane - plik pamięta ścieżki
+ * zaimportowanych modułów, a odczyt importuje je ponownie. Pominięte: zadania i kanały (spawn,
+ * channel) oraz funkcje zadeklarowane wewnątrz innych funkcji (ich closure to zasięg lokalny).
+ */
+final class SessionSnapshot {
+    private static final int MAGIC = 0x434C5353; // "CLSS"
+    // 2: nowy token IMPORT przesunął numery typów i operatorów zapisanych w arenie
+    private static final int VERSION = 2;
+
+    final GlobalEnvironment globals;
+    final FunctionTable functions;
+    // Ścieżki bezwzględne modułów do ponownego importu
+    final List<Path> modules;
+    final String summary;
+
+    private SessionSnapshot(GlobalEnvironment globals, FunctionTable functions, List<Path> modules, String summary) {
+        this.globals = globals;
+        this.functions = functions;
+        this.modules = modules;
+        this.summary = summary;
+    }
+
+    // ===== ZAPIS =====
+    // pureOutside - do analizy czystości ciał parsowanych leniwie, które trzeba teraz sparsować
+    static String save(Path path, GlobalEnvironment globals, FunctionTable functions, Collection<Path> modules,
+                       Predicate<String> pureOutside) throws IOException {
+        AstArena arena = new AstArena();
+        int skippedFunctions = 0;
+        for (Function function : functions.values()) {
+            if (function.closure != globals) {
+                if (function.module == null) skippedFunctions++;
+                continue;
+            }
+            try {
+                arena.addTopLevel(declaration(function, pureOutside));
+            } catch (IllegalStateException e) {
+                // Zagnieżdżona deklaracja z niesparsowanym ciałem
+                skippedFunctions++;
+            }
+        }
+        arena.trim();
+
+        List<Map.Entry<String, Value>> variables = new ArrayList<>();
+        int skippedVariables = 0;
+        for (Map.Entry<String, Value> variable : globals.variables().entrySet()) {
+            int kind = variable.getValue().kind;
+            if (kind == Value.TASK || kind == Value.CHANNEL) skippedVariables++;
+            else variables.add(variable);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // Nazwy symboli jednym blokiem (identyfikatory nie zawierają białych znaków)
+            int symbolCount = Symbols.count();
+            StringBuilder names = new StringBuilder();
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                names.append(Symbols.name(symbol)).append('\n');
+            }
+            out.writeInt(symbolCount);
+            writeString(out, names.toString());
+            out.writeInt(variables.size());
+            for (Map.Entry<String, Value> variable : variables) {
+                out.writeInt(Symbols.intern(variable.getKey()));
+                writeValue(out, variable.getValue());
+            }
+            out.writeInt(modules.size());
+            for (Path module : modules) {
+                writeString(out, module.toString());
+            }
+            arena.writeTo(out);
+        }
+
+        return String.format("%d variables, %d functions, %d modules%s, %d bytes", variables.size(),
+                arena.topLevelCount(), modules.size(), skipped(skippedVariables, skippedFunctions), Files.size(path));
+    }
+
+    // Deklaracja odtworzona z funkcji (ciało po optymalizacji, wynik analizy czystości)
+    private static FunctionDeclaration declaration(Function function, Predicate<String> pureOutside) {
+        List<Statement> body;
+        if (function.arena != null) {
+            body = function.arena.decodeStatements(function.bodyList);
+        } else {
+            function.ensureParsed(pureOutside);
+            body = function.body;
+        }
+        FunctionDeclaration declaration = new FunctionDeclaration(function.returnType, function.name,
+                function.parameters, body, function.cached);
+        declaration.pure = function.memoized && !function.cached;
+        declaration.callees = function.callees != null ? function.callees : Set.of();
+        return declaration;
+    }
+
+    private static String skipped(int variables, int functions) {
+        if (variables == 0 && functions == 0) return "";
+        return " (skipped " + variables + " task/channel variables, " + functions + " nested functions)";
+    }
+
+    // ===== ODCZYT =====
+    // Nowe globals i tablica funkcji; bieżąca sesja zmienia się dopiero po udanym odczycie
+    static SessionSnapshot load(Path path) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not a session file: " + path);
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("Unsupported session file version " + version + ": " + path);
+
+            int[] symbols = new int[in.getInt()];
+            String names = readString(in);
+            for (int i = 0, from = 0; i < symbols.length; i++) {
+                int end = names.indexOf('\n', from);
+                symbols[i] = Symbols.intern(names.substring(from, end));
+                from = end + 1;
+            }
+
+            GlobalEnvironment globals = new GlobalEnvironment();
+            int variableCount = in.getInt();
+            for (int i = 0; i < variableCount; i++) {
+                int symbol = symbols[in.getInt()];
+                Value value = readValue(in);
+                // Zmienna int128 trzyma zawsze Int128Value (deklaracja i przypisania ją rozszerzają)
+                globals.declare(symbol, value.kind == Value.INT128 ? Lexer.TokenType.INT128 : null, value);
+            }
+
+            List<Path> modules = new ArrayList<>();
+            int moduleCount = in.getInt();
+            for (int i = 0; i < moduleCount; i++) {
+                modules.add(Path.of(readString(in)));
+            }
+
+            AstArena arena = AstArena.readFrom(in, symbols);
+            FunctionTable functions = new FunctionTable();
+            for (int i = 0; i < arena.topLevelCount(); i++) {
+                Function function = new Function(arena, arena.topLevel(i), globals);
+                functions.put(function.symbol, function);
+            }
+
+            String summary = String.format("%d variables, %d functions in %.1f ms", variableCount,
+                    arena.topLevelCount(), (System.nanoTime() - start) / 1e6);
+            return new SessionSnapshot(globals, functions, modules, summary);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt session file: " + path);
+        }
+    }
+
+    // ===== KODOWANIE =====
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Tablica w jednym kawałku: liczba elementów i big-endian inty
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+        buffer.asIntBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array());
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    static void writeValue(DataOutputStream out, Value value) throws IOException {
+        out.writeByte(value.kind);
+        switch (value.kind) {
+            case Value.INT -> out.writeLong(((IntValue) value).value);
+            case Value.INT128 -> {
+                Int128Value v = (Int128Value) value;
+                out.writeLong(v.hi);
+                out.writeLong(v.lo);
+            }
+            case Value.DOUBLE -> out.writeLong(Double.doubleToRawLongBits(((DoubleValue) value).value));
+            case Value.STRING -> writeString(out, ((StringValue) value).value);
+            case Value.BOOL -> out.writeBoolean(((BoolValue) value).value);
+            case Value.VOID -> { }
+            default -> throw new IOException("Cannot save a " + value.getTypeName() + " value");
+        }
+    }
+
+    static Value readValue(ByteBuffer in) throws IOException {
+        byte kind = in.get();
+        return switch (kind) {
+            case Value.INT -> new IntValue(in.getLong());
+            case Value.INT128 -> new Int128Value(in.getLong(), in.getLong());
+            case Value.DOUBLE -> new DoubleValue(Double.longBitsToDouble(in.getLong()));
+            case Value.STRING -> new StringValue(readString(in));
+            case Value.BOOL -> BoolValue.of(in.get() != 0);
+            case Value.VOID -> VoidValue.INSTANCE;
+            default -> throw new IOException("Unknown value kind " + kind);
+        };
+    }
+}
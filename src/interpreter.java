@@ -1,14 +1,41 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
 
 // ===== WARTOŚCI W INTERPRETERZE =====
-abstract class Value {
+abstract sealed class Value {
+    static final int INT = 0;
+    static final int INT128 = 1;
+    static final int DOUBLE = 2;
+    static final int STRING = 3;
+    static final int BOOL = 4;
+    static final int VOID = 5;
+    static final int TASK = 6;
+    static final int CHANNEL = 7;
+
+    final int kind;
+    Value(int kind) { this.kind = kind; }
+
     abstract Object getValue();
     abstract String getTypeName();
 }
 
-class IntValue extends Value {
+final class IntValue extends Value {
     final long value;
-    IntValue(long value) { this.value = value; }
+    IntValue(long value) { super(INT); this.value = value; }
 
     @Override
     Object getValue() { return value; }
@@ -20,9 +47,214 @@ class IntValue extends Value {
     public String toString() { return String.valueOf(value); }
 }
 
-class DoubleValue extends Value {
+// Liczba całkowita 128-bitowa (uzupełnienie do dwóch) trzymana w dwóch longach
+final class Int128Value extends Value {
+    static final Int128Value ZERO = new Int128Value(0, 0);
+    private static final long TEN_POW_18 = 1_000_000_000_000_000_000L;
+
+    final long hi;
+    final long lo;
+
+    Int128Value(long hi, long lo) {
+        super(INT128);
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    static Int128Value of(long value) {
+        return new Int128Value(value >> 63, value);
+    }
+
+    // Tylko literały spoza int64, więc BigInteger nie jest na gorącej ścieżce
+    static Int128Value parse(String text) {
+        BigInteger value = new BigInteger(text);
+        if (value.bitLength() > 127) throw new RuntimeError("Integer literal out of range: " + text);
+        return new Int128Value(value.shiftRight(64).longValue(), value.longValue());
+    }
+
+    boolean fitsInLong() {
+        return hi == (lo >> 63);
+    }
+
+    boolean isNegative() {
+        return hi < 0;
+    }
+
+    boolean isZero() {
+        return hi == 0 && lo == 0;
+    }
+
+    // ===== ARYTMETYKA =====
+    Int128Value add(Int128Value o) {
+        long l = lo + o.lo;
+        long carry = Long.compareUnsigned(l, lo) < 0 ? 1 : 0;
+        return new Int128Value(hi + o.hi + carry, l);
+    }
+
+    Int128Value sub(Int128Value o) {
+        long l = lo - o.lo;
+        long borrow = Long.compareUnsigned(lo, o.lo) < 0 ? 1 : 0;
+        return new Int128Value(hi - o.hi - borrow, l);
+    }
+
+    Int128Value negate() {
+        return ZERO.sub(this);
+    }
+
+    Int128Value mul(Int128Value o) {
+        // Iloczyn modulo 2^128: pełne lo*lo plus krzyżowe składniki do górnej połowy
+        long h = unsignedMultiplyHigh(lo, o.lo) + hi * o.lo + lo * o.hi;
+        return new Int128Value(h, lo * o.lo);
+    }
+
+    Int128Value div(Int128Value o) {
+        if (o.isZero()) throw new RuntimeError("Division by zero");
+        if (fitsInLong() && o.fitsInLong() && !(lo == Long.MIN_VALUE && o.lo == -1)) {
+            return of(lo / o.lo);
+        }
+        Int128Value q = divideUnsigned(abs(), o.abs())[0];
+        return isNegative() != o.isNegative() ? q.negate() : q;
+    }
+
+    Int128Value mod(Int128Value o) {
+        if (o.isZero()) throw new RuntimeError("Division by zero");
+        if (fitsInLong() && o.fitsInLong() && !(lo == Long.MIN_VALUE && o.lo == -1)) {
+            return of(lo % o.lo);
+        }
+        Int128Value r = divideUnsigned(abs(), o.abs())[1];
+        return isNegative() ? r.negate() : r;
+    }
+
+    int compareTo(Int128Value o) {
+        if (hi != o.hi) return Long.compare(hi, o.hi);
+        return Long.compareUnsigned(lo, o.lo);
+    }
+
+    double toDouble() {
+        double low = lo >= 0 ? lo : (lo >>> 1) * 2.0 + (lo & 1);
+        return hi * 0x1p64 + low;
+    }
+
+    private Int128Value abs() {
+        return isNegative() ? negate() : this;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    // Dzielenie bez znaku: {iloraz, reszta}
+    private static Int128Value[] divideUnsigned(Int128Value n, Int128Value d) {
+        if (n.hi == 0 && d.hi == 0) {
+            return new Int128Value[] {
+                    new Int128Value(0, Long.divideUnsigned(n.lo, d.lo)),
+                    new Int128Value(0, Long.remainderUnsigned(n.lo, d.lo))
+            };
+        }
+        if (d.hi == 0) {
+            // Dzielnik 64-bitowy: dwa kroki dzielenia 128/64 zamiast pętli bitowej
+            long qHi = Long.divideUnsigned(n.hi, d.lo);
+            long r = Long.remainderUnsigned(n.hi, d.lo);
+            long[] rem = new long[1];
+            long qLo = divideUnsigned128By64(r, n.lo, d.lo, rem);
+            return new Int128Value[] { new Int128Value(qHi, qLo), new Int128Value(0, rem[0]) };
+        }
+
+        long qHi = 0, qLo = 0;
+        long rHi = 0, rLo = 0;
+        int bits = n.hi != 0 ? 128 - Long.numberOfLeadingZeros(n.hi) : 64 - Long.numberOfLeadingZeros(n.lo);
+        for (int i = bits - 1; i >= 0; i--) {
+            // r = (r << 1) | bit(n, i)
+            rHi = (rHi << 1) | (rLo >>> 63);
+            long bit = i >= 64 ? (n.hi >>> (i - 64)) & 1 : (n.lo >>> i) & 1;
+            rLo = (rLo << 1) | bit;
+
+            boolean geq = rHi != d.hi ? Long.compareUnsigned(rHi, d.hi) > 0 : Long.compareUnsigned(rLo, d.lo) >= 0;
+            if (geq) {
+                long l = rLo - d.lo;
+                rHi = rHi - d.hi - (Long.compareUnsigned(rLo, d.lo) < 0 ? 1 : 0);
+                rLo = l;
+                if (i >= 64) qHi |= 1L << (i - 64);
+                else qLo |= 1L << i;
+            }
+        }
+        return new Int128Value[] { new Int128Value(qHi, qLo), new Int128Value(rHi, rLo) };
+    }
+
+    // Dzielenie (u1:u0) / v dla u1 < v (Hacker's Delight, divlu)
+    private static long divideUnsigned128By64(long u1, long u0, long v, long[] rem) {
+        final long b = 1L << 32;
+        final long mask = b - 1;
+        int s = Long.numberOfLeadingZeros(v);
+        v <<= s;
+        long vn1 = v >>> 32;
+        long vn0 = v & mask;
+
+        long un32 = (u1 << s) | (s == 0 ? 0 : u0 >>> (64 - s));
+        long un10 = u0 << s;
+        long un1 = un10 >>> 32;
+        long un0 = un10 & mask;
+
+        long q1 = Long.divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (Long.compareUnsigned(q1, b) >= 0 || Long.compareUnsigned(q1 * vn0, (rhat << 32) + un1) > 0) {
+            q1--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) break;
+        }
+
+        long un21 = (un32 << 32) + un1 - q1 * v;
+        long q0 = Long.divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (Long.compareUnsigned(q0, b) >= 0 || Long.compareUnsigned(q0 * vn0, (rhat << 32) + un0) > 0) {
+            q0--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) break;
+        }
+
+        rem[0] = ((un21 << 32) + un0 - q0 * v) >>> s;
+        return (q1 << 32) + q0;
+    }
+
+    @Override
+    Object getValue() { return new java.math.BigInteger(toString()); }
+
+    @Override
+    String getTypeName() { return "int128"; }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Int128Value other && hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() { return Long.hashCode(hi) * 31 + Long.hashCode(lo); }
+
+    @Override
+    public String toString() {
+        if (fitsInLong()) return Long.toString(lo);
+
+        // Kolejne bloki po 18 cyfr dziesiętnych
+        Int128Value rest = abs();
+        Int128Value base = of(TEN_POW_18);
+        StringBuilder sb = new StringBuilder();
+        while (!rest.isZero()) {
+            Int128Value[] qr = divideUnsigned(rest, base);
+            String chunk = Long.toString(qr[1].lo);
+            rest = qr[0];
+            sb.insert(0, chunk);
+            if (!rest.isZero()) {
+                sb.insert(0, "0".repeat(18 - chunk.length()));
+            }
+        }
+        if (isNegative()) sb.insert(0, '-');
+        return sb.toString();
+    }
+}
+
+final class DoubleValue extends Value {
     final double value;
-    DoubleValue(double value) { this.value = value; }
+    DoubleValue(double value) { super(DOUBLE); this.value = value; }
 
     @Override
     Object getValue() { return value; }
@@ -34,9 +266,9 @@ class DoubleValue extends Value {
     public String toString() { return String.valueOf(value); }
 }
 
-class StringValue extends Value {
+final class StringValue extends Value {
     final String value;
-    StringValue(String value) { this.value = value; }
+    StringValue(String value) { super(STRING); this.value = value; }
 
     @Override
     Object getValue() { return value; }
@@ -48,9 +280,14 @@ class StringValue extends Value {
     public String toString() { return value; }
 }
 
-class BoolValue extends Value {
+final class BoolValue extends Value {
+    static final BoolValue TRUE = new BoolValue(true);
+    static final BoolValue FALSE = new BoolValue(false);
+
     final boolean value;
-    BoolValue(boolean value) { this.value = value; }
+    BoolValue(boolean value) { super(BOOL); this.value = value; }
+
+    static BoolValue of(boolean value) { return value ? TRUE : FALSE; }
 
     @Override
     Object getValue() { return value; }
@@ -62,9 +299,9 @@ class BoolValue extends Value {
     public String toString() { return String.valueOf(value); }
 }
 
-class VoidValue extends Value {
+final class VoidValue extends Value {
     static final VoidValue INSTANCE = new VoidValue();
-    private VoidValue() {}
+    private VoidValue() { super(VOID); }
 
     @Override
     Object getValue() { return null; }
@@ -76,6 +313,36 @@ class VoidValue extends Value {
     public String toString() { return "void"; }
 }
 
+// Uchwyt zadania uruchomionego przez spawn
+final class TaskValue extends Value {
+    final CompletableFuture<Value> future;
+    TaskValue(CompletableFuture<Value> future) { super(TASK); this.future = future; }
+
+    @Override
+    Object getValue() { return future; }
+
+    @Override
+    String getTypeName() { return "task"; }
+
+    @Override
+    public String toString() { return future.isDone() ? "<task done>" : "<task>"; }
+}
+
+// Ograniczony kanał do komunikacji między zadaniami
+final class ChannelValue extends Value {
+    final BlockingQueue<Value> queue;
+    ChannelValue(int capacity) { super(CHANNEL); this.queue = new ArrayBlockingQueue<>(capacity); }
+
+    @Override
+    Object getValue() { return queue; }
+
+    @Override
+    String getTypeName() { return "channel"; }
+
+    @Override
+    public String toString() { return "<channel " + queue.size() + "/" + (queue.size() + queue.remainingCapacity()) + ">"; }
+}
+
 // ===== WYJĄTKI =====
 class ReturnException extends RuntimeException {
     final Value value;
@@ -87,9 +354,25 @@ class RuntimeError extends RuntimeException {
 }
 
 // ===== ŚRODOWISKO (ZMIENNE) =====
+// Zmienne trzymane w slotach: znacznik rodzaju (byte[]), 64-bitowy ładunek (long[]) dla
+// int/double/bool oraz tablica referencji dla stringów i pozostałych wartości (oraz jako
+// pamięć podręczna już opakowanych liczb). Numery symboli (Symbols) mapowane na sloty
+// adresowaniem otwartym; numery są gęste, więc wystarczają ich niskie bity jako hash.
+// Szybkie ścieżki (IncrementLocal, porównania, pętle licznikowe) czytają i piszą ładunek
+// wprost, bez tworzenia obiektów Value. Slot zadeklarowany jako int128 pamięta to (int128Slots),
+// więc przypisanie wartości int rozszerza ją tak jak deklaracja.
 class Environment {
-    private final Map<String, Value> variables = new HashMap<>();
-    private final Environment parent;
+    private static final byte EMPTY_TAG = -1;
+
+    // Numer symbolu + 1; 0 oznacza pustą pozycję
+    private int[] keys = new int[8];
+    private int[] keySlots = new int[8];
+    private byte[] tags = new byte[4];
+    private long[] bits = new long[4];
+    private Value[] refs = new Value[4];
+    private boolean[] int128Slots = new boolean[4];
+    private int size;
+    private Environment parent;
 
     Environment() {
         this.parent = null;
@@ -99,154 +382,1208 @@ class Environment {
         this.parent = parent;
     }
 
-    void define(String name, Value value) {
-        variables.put(name, value);
+    void define(int symbol, Value value) {
+        declare(symbol, null, value);
+    }
+
+    // Definicja z typem z deklaracji (null - bez typu, np. licznik pętli, zmienna redukcji)
+    void declare(int symbol, Lexer.TokenType type, Value value) {
+        int slot = slotOf(symbol);
+        if (slot < 0) slot = addSlot(symbol);
+        declareSlot(slot, type, value);
+    }
+
+    final void declareSlot(int slot, Lexer.TokenType type, Value value) {
+        int128Slots[slot] = type == Lexer.TokenType.INT128;
+        store(slot, value);
+    }
+
+    Value get(int symbol) {
+        for (Environment env = this; env != null; env = env.parent) {
+            int slot = env.slotOf(symbol);
+            if (slot >= 0) return env.load(slot);
+        }
+        throw new RuntimeError("Undefined variable: " + Symbols.name(symbol));
+    }
+
+    void assign(int symbol, Value value) {
+        for (Environment env = this; env != null; env = env.parent) {
+            int slot = env.slotOf(symbol);
+            if (slot >= 0) {
+                if (env.int128Slots[slot] && value.kind == Value.INT) {
+                    value = Int128Value.of(((IntValue) value).value);
+                }
+                env.store(slot, value);
+                return;
+            }
+        }
+        throw new RuntimeError("Undefined variable: " + Symbols.name(symbol));
+    }
+
+    boolean isDefined(int symbol) {
+        return resolve(symbol) != null;
+    }
+
+    // Środowisko (to albo przodek), w którym zdefiniowano zmienną, albo null
+    Environment resolve(int symbol) {
+        for (Environment env = this; env != null; env = env.parent) {
+            if (env.slotOf(symbol) >= 0) return env;
+        }
+        return null;
+    }
+
+    // ===== DOSTĘP DO SLOTÓW =====
+    int slotOf(int symbol) {
+        int mask = keys.length - 1;
+        int key = symbol + 1;
+        int i = symbol & mask;
+        int k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) return keySlots[i];
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    byte tagAt(int slot) {
+        return tags[slot];
+    }
+
+    long longAt(int slot) {
+        return bits[slot];
+    }
+
+    void setLongAt(int slot, long value) {
+        tags[slot] = Value.INT;
+        bits[slot] = value;
+        refs[slot] = null;
+    }
+
+    Value load(int slot) {
+        Value cached = refs[slot];
+        if (cached != null) return cached;
+        Value value = switch (tags[slot]) {
+            case Value.INT -> new IntValue(bits[slot]);
+            case Value.DOUBLE -> new DoubleValue(Double.longBitsToDouble(bits[slot]));
+            case Value.BOOL -> BoolValue.of(bits[slot] != 0);
+            default -> VoidValue.INSTANCE;
+        };
+        refs[slot] = value;
+        return value;
+    }
+
+    void store(int slot, Value value) {
+        byte tag = (byte) value.kind;
+        tags[slot] = tag;
+        refs[slot] = value;
+        switch (tag) {
+            case Value.INT -> bits[slot] = ((IntValue) value).value;
+            case Value.DOUBLE -> bits[slot] = Double.doubleToRawLongBits(((DoubleValue) value).value);
+            case Value.BOOL -> bits[slot] = ((BoolValue) value).value ? 1 : 0;
+            default -> bits[slot] = 0;
+        }
+    }
+
+    private int addSlot(int symbol) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int slot = newSlot();
+        insertKey(symbol + 1, slot);
+        return slot;
+    }
+
+    // Nowy, jeszcze pusty slot (bez przypisanej nazwy)
+    int newSlot() {
+        if (size == tags.length) {
+            int capacity = size * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            bits = Arrays.copyOf(bits, capacity);
+            refs = Arrays.copyOf(refs, capacity);
+            int128Slots = Arrays.copyOf(int128Slots, capacity);
+        }
+        tags[size] = EMPTY_TAG;
+        int128Slots[size] = false;
+        return size++;
+    }
+
+    boolean isEmpty(int slot) {
+        return tags[slot] == EMPTY_TAG;
+    }
+
+    private void insertKey(int key, int slot) {
+        int mask = keys.length - 1;
+        int i = (key - 1) & mask;
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        keySlots[i] = slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldSlots = keySlots;
+        keys = new int[capacity];
+        keySlots = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) insertKey(oldKeys[i], oldSlots[i]);
+        }
+    }
+
+    final void copySlots(Environment from) {
+        keys = from.keys.clone();
+        keySlots = from.keySlots.clone();
+        tags = from.tags.clone();
+        bits = from.bits.clone();
+        refs = from.refs.clone();
+        int128Slots = from.int128Slots.clone();
+        size = from.size;
+    }
+
+    // Ponowne użycie zasięgu z puli interpretera (tablice zostają, czyścimy tylko zawartość)
+    void reuse(Environment parent) {
+        this.parent = parent;
+    }
+
+    void release() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(refs, 0, size, null);
+        Arrays.fill(tags, 0, size, EMPTY_TAG);
+        size = 0;
+        parent = null;
+    }
+
+    // ===== INSPEKCJA (debugger) =====
+    Environment parent() {
+        return parent;
+    }
+
+    // Zmienne tego zasięgu (bez przodków) w kolejności definiowania
+    Map<String, Value> variables() {
+        String[] names = new String[size];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) names[keySlots[i]] = Symbols.name(keys[i] - 1);
+        }
+        return variables(names);
+    }
+
+    // names[slot] - nazwa zmiennej w slocie albo null
+    final Map<String, Value> variables(String[] names) {
+        Map<String, Value> result = new LinkedHashMap<>();
+        for (int slot = 0; slot < names.length; slot++) {
+            if (names[slot] != null && !isEmpty(slot)) result.put(names[slot], load(slot));
+        }
+        return result;
+    }
+
+    final int slotCount() {
+        return size;
+    }
+}
+
+// ===== ZMIENNE GLOBALNE =====
+// Zasięg globalny indeksowany wprost numerem symbolu: slotOf to jedno ładowanie z tablicy
+// zamiast sondowania tablicy haszującej. Sloty nazw najwyższego poziomu są przydzielane przy
+// ładowaniu programu (reserve), zanim ruszy wykonanie; nowe nazwy (REPL, deklaracje w if/while)
+// powiększają tablicę. Zarezerwowany slot pozostaje pusty, dopóki define go nie zapisze.
+final class GlobalEnvironment extends Environment {
+    // Numer symbolu -> slot + 1; 0 oznacza brak slotu
+    private int[] index = new int[256];
+
+    @Override
+    void declare(int symbol, Lexer.TokenType type, Value value) {
+        declareSlot(reserve(symbol), type, value);
+    }
+
+    @Override
+    int slotOf(int symbol) {
+        int[] table = index;
+        if (symbol >= table.length) return -1;
+        int slot = table[symbol] - 1;
+        return slot >= 0 && !isEmpty(slot) ? slot : -1;
+    }
+
+    int reserve(int symbol) {
+        if (symbol >= index.length) {
+            index = Arrays.copyOf(index, Math.max(index.length * 2, symbol + 1));
+        }
+        int slot = index[symbol] - 1;
+        if (slot < 0) {
+            slot = newSlot();
+            index[symbol] = slot + 1;
+        }
+        return slot;
+    }
+
+    // Niezależna kopia (zmienne globalne zadania ze spawn)
+    GlobalEnvironment copy() {
+        GlobalEnvironment copy = new GlobalEnvironment();
+        copy.copySlots(this);
+        copy.index = index.clone();
+        return copy;
+    }
+
+    @Override
+    Map<String, Value> variables() {
+        String[] names = new String[slotCount()];
+        for (int symbol = 0; symbol < index.length; symbol++) {
+            if (index[symbol] != 0) names[index[symbol] - 1] = Symbols.name(symbol);
+        }
+        return variables(names);
+    }
+}
+
+// ===== WYJŚCIE (print / println) =====
+// Buforowane wyjście interpretera. Zapis do strumienia następuje po zapełnieniu bufora,
+// przy flush() z kodu, na końcu interpret() albo po każdym zapisie w trybie autoFlush.
+class OutputSink {
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Writer writer;
+    private final boolean autoFlush;
+
+    OutputSink(OutputStream target, int bufferSize, boolean autoFlush) {
+        this.writer = new java.io.BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), bufferSize);
+        this.autoFlush = autoFlush;
+    }
+
+    // Wyjście na aktualny System.out (sprawdzany przy każdym zapisie, bo edytor go podmienia)
+    static OutputSink systemOut(boolean autoFlush) {
+        OutputStream current = new OutputStream() {
+            @Override
+            public void write(int b) { System.out.write(b); }
+
+            @Override
+            public void write(byte[] b, int off, int len) { System.out.write(b, off, len); }
+
+            @Override
+            public void flush() { System.out.flush(); }
+        };
+        return new OutputSink(current, DEFAULT_BUFFER_SIZE, autoFlush);
+    }
+
+    synchronized void print(String text) {
+        try {
+            writer.write(text);
+            if (autoFlush) writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeError("Output error: " + e.getMessage());
+        }
+    }
+
+    void println() {
+        print(System.lineSeparator());
+    }
+
+    synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeError("Output error: " + e.getMessage());
+        }
+    }
+}
+
+// ===== FUNKCJA =====
+class Function {
+    final Lexer.TokenType returnType;
+    final String name;
+    final int symbol;
+    final List<Parameter> parameters;
+    // Przy leniwym parsowaniu ciało i wyniki analizy zasięgów ustawia dopiero ensureParsed()
+    List<Statement> body;
+    // Bez parametrów i lokalnych deklaracji ciało może działać wprost w closure
+    boolean needsFrame;
+    boolean capturesScope;
+    final Environment closure;
+    // cached fn - zapamiętywanie wymuszone przez użytkownika
+    final boolean cached;
+    // Funkcje wywoływane z ciała (wypełnione tylko dla funkcji uznanych za czyste)
+    Set<String> callees;
+    // Czy wyniki trafiają do MemoCache; wyłączane, gdy wywoływana funkcja zostanie nadpisana
+    volatile boolean memoized;
+    // Niesparsowane ciało; zapis null publikuje pola ustawione w resolve()
+    private volatile LazyBody lazyBody;
+    // Moduł, którego kod najwyższego poziomu trzeba wykonać przed pierwszym wywołaniem, albo null
+    ModuleInstance module;
+    // Funkcja z płaskiego AST: ciało to lista węzłów areny zamiast body
+    final AstArena arena;
+    final int bodyList;
+
+    Function(FunctionDeclaration declaration, Environment closure) {
+        this.returnType = declaration.returnType;
+        this.name = declaration.name;
+        this.symbol = declaration.symbol;
+        this.parameters = declaration.parameters;
+        this.closure = closure;
+        this.cached = declaration.cached;
+        this.callees = declaration.callees;
+        this.memoized = declaration.cached || declaration.pure;
+        this.arena = null;
+        this.bodyList = AstArena.NONE;
+        if (declaration.lazyBody != null) {
+            this.lazyBody = declaration.lazyBody;
+        } else {
+            setBody(declaration.body);
+        }
+    }
+
+    // Bez analizy zasięgów po węzłach areny ramka jest zawsze nowa i nie wraca do puli
+    Function(AstArena arena, int node, Environment closure) {
+        this.returnType = arena.returnType(node);
+        this.name = arena.functionName(node);
+        this.symbol = arena.functionSymbol(node);
+        this.parameters = arena.parameters(node);
+        this.closure = closure;
+        this.cached = arena.isCached(node);
+        this.callees = arena.callees(node);
+        this.memoized = cached || arena.isPure(node);
+        this.arena = arena;
+        this.bodyList = arena.functionBody(node);
+        this.needsFrame = true;
+        this.capturesScope = true;
+    }
+
+    // pureOutside: czy już zarejestrowana funkcja o danej nazwie jest czysta
+    void ensureParsed(Predicate<String> pureOutside) {
+        LazyBody pending = lazyBody;
+        if (pending != null) resolve(pending, pureOutside);
+    }
+
+    private synchronized void resolve(LazyBody pending, Predicate<String> pureOutside) {
+        if (lazyBody == null) return;
+        setBody(pending.parse());
+        if (!cached) {
+            Set<String> called = new HashSet<>();
+            if (PurityAnalysis.isPure(name, parameters, body, called, pureOutside)) {
+                callees = called;
+                memoized = true;
+            }
+        }
+        lazyBody = null;
+    }
+
+    private void setBody(List<Statement> body) {
+        this.body = body;
+        this.needsFrame = !parameters.isEmpty() || ScopeAnalysis.declaresLocals(body);
+        this.capturesScope = ScopeAnalysis.capturesScope(body);
+    }
+}
+
+// ===== TABLICA FUNKCJI =====
+// Funkcje indeksowane numerem symbolu nazwy: odczyt przy wywołaniu to load z tablicy, bez
+// haszowania. Zapisy (deklaracje) są pod blokadą; przy powiększeniu nowa tablica jest
+// publikowana przez pole volatile. Wątki zadań i parallel for startują po deklaracjach,
+// które widzą, więc odczyt elementu bez blokady jest bezpieczny.
+final class FunctionTable {
+    private volatile Function[] table = new Function[64];
+
+    Function get(int symbol) {
+        Function[] t = table;
+        return symbol < t.length ? t[symbol] : null;
+    }
+
+    // Zwraca poprzednią funkcję o tej nazwie albo null
+    synchronized Function put(int symbol, Function function) {
+        Function[] t = table;
+        if (symbol >= t.length) {
+            t = Arrays.copyOf(t, Math.max(t.length * 2, symbol + 1));
+        }
+        Function previous = t[symbol];
+        t[symbol] = function;
+        table = t;
+        return previous;
+    }
+
+    List<Function> values() {
+        List<Function> out = new ArrayList<>();
+        for (Function function : table) {
+            if (function != null) out.add(function);
+        }
+        return out;
+    }
+
+    // Miejsce na funkcję o danej nazwie (przydzielane przy ładowaniu programu)
+    synchronized void reserve(int symbol) {
+        if (symbol >= table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, symbol + 1));
+        }
+    }
+
+    synchronized void clear() {
+        table = new Function[64];
+    }
+}
+
+// ===== CACHE MEMOIZACJI =====
+// Wspólny dla wszystkich wątków interpretera. Klucz to funkcja i jej argumenty (po koercji),
+// porównywane po wartości. Wpisy są usuwane w kolejności LRU, gdy szacowany rozmiar
+// przekroczy limit w bajtach. Liczymy trafienia, chybienia i usunięcia.
+final class MemoCache {
+    static final long DEFAULT_LIMIT_BYTES = 16L << 20;
+    // Nagłówek wpisu LinkedHashMap, obiekt klucza i tablica argumentów
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private volatile long limitBytes;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    MemoCache(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    boolean isEnabled() {
+        return limitBytes > 0;
+    }
+
+    synchronized void setLimit(long limitBytes) {
+        this.limitBytes = limitBytes;
+        evict();
+    }
+
+    // null, gdy brak wpisu
+    synchronized Value get(Function function, Value[] arguments) {
+        Entry entry = entries.get(new Key(function, arguments));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    synchronized void put(Function function, Value[] arguments, Value result) {
+        long weight = ENTRY_OVERHEAD + sizeOf(result);
+        for (Value argument : arguments) weight += 8 + sizeOf(argument);
+        if (weight > limitBytes) return;
+
+        Entry previous = entries.put(new Key(function, arguments), new Entry(result, weight));
+        if (previous != null) sizeBytes -= previous.weight;
+        sizeBytes += weight;
+        evict();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    synchronized String stats() {
+        long lookups = hits + misses;
+        return String.format("memo: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries, %d/%d bytes",
+                hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions,
+                entries.size(), sizeBytes, limitBytes);
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (sizeBytes > limitBytes && it.hasNext()) {
+            sizeBytes -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // Tylko wartości porównywalne po zawartości nadają się na argumenty klucza
+    static boolean isKeyable(Value value) {
+        return value.kind <= Value.BOOL;
+    }
+
+    private static long sizeOf(Value value) {
+        return switch (value.kind) {
+            case Value.INT128 -> 32;
+            case Value.STRING -> 40 + 2L * ((StringValue) value).value.length();
+            default -> 16;
+        };
+    }
+
+    private static boolean sameValue(Value a, Value b) {
+        if (a.kind != b.kind) return false;
+        return switch (a.kind) {
+            case Value.INT -> ((IntValue) a).value == ((IntValue) b).value;
+            case Value.INT128 -> ((Int128Value) a).hi == ((Int128Value) b).hi && ((Int128Value) a).lo == ((Int128Value) b).lo;
+            case Value.DOUBLE -> Double.doubleToLongBits(((DoubleValue) a).value) == Double.doubleToLongBits(((DoubleValue) b).value);
+            case Value.STRING -> ((StringValue) a).value.equals(((StringValue) b).value);
+            case Value.BOOL -> ((BoolValue) a).value == ((BoolValue) b).value;
+            default -> a == b;
+        };
+    }
+
+    private static int hashValue(Value value) {
+        return switch (value.kind) {
+            case Value.INT -> Long.hashCode(((IntValue) value).value);
+            case Value.INT128 -> 31 * Long.hashCode(((Int128Value) value).hi) + Long.hashCode(((Int128Value) value).lo);
+            case Value.DOUBLE -> Double.hashCode(((DoubleValue) value).value);
+            case Value.STRING -> ((StringValue) value).value.hashCode();
+            case Value.BOOL -> Boolean.hashCode(((BoolValue) value).value);
+            default -> System.identityHashCode(value);
+        };
+    }
+
+    private static final class Key {
+        final Function function;
+        final Value[] arguments;
+        final int hash;
+
+        Key(Function function, Value[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+            int h = System.identityHashCode(function);
+            for (Value argument : arguments) h = 31 * h + hashValue(argument);
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other) || other.function != function || other.hash != hash) return false;
+            for (int i = 0; i < arguments.length; i++) {
+                if (!sameValue(arguments[i], other.arguments[i])) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Value result;
+        final long weight;
+
+        Entry(Value result, long weight) {
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+}
+
+// ===== INTERPRETER =====
+class interpreter {
+    private GlobalEnvironment globals = new GlobalEnvironment();
+    private Environment environment = globals;
+    // Współdzielone przez zadania ze spawn i wątki parallel for
+    private FunctionTable functions = new FunctionTable();
+    private OutputSink output = OutputSink.systemOut(false);
+    private MemoCache memo = new MemoCache(MemoCache.DEFAULT_LIMIT_BYTES);
+    private int compileThreshold = HotScripts.DEFAULT_THRESHOLD;
+    // Zaimportowane moduły (ścieżka bezwzględna -> stan w tym interpreterze) i katalog,
+    // względem którego rozwiązywany jest import w bieżącym pliku
+    private Map<Path, ModuleInstance> modules = new ConcurrentHashMap<>();
+    private Path importBase = Path.of("");
+    // Tylko w zadaniu ze spawn: zasięg globalny (programu, zainicjalizowanych modułów) -> własna
+    // kopia zadania; funkcje z takim closure wykonują się na kopii. null poza zadaniami
+    private Map<Environment, Environment> taskGlobals;
+    // Pula zasięgów, które nie uciekły (bez zagnieżdżonych deklaracji funkcji); osobna na wątek
+    private final ArrayDeque<Environment> scopePool = new ArrayDeque<>();
+    private static final int SCOPE_POOL_LIMIT = 256;
+    static {
+        registerBuiltins();
+    }
+
+    public interpreter() {
+    }
+
+    // Interpreter roboczy (np. dla wątku parallel for): wspólne globals i funkcje, własne środowisko
+    private interpreter(interpreter parent, Environment environment) {
+        this.globals = parent.globals;
+        this.functions = parent.functions;
+        this.output = parent.output;
+        this.memo = parent.memo;
+        this.modules = parent.modules;
+        this.importBase = parent.importBase;
+        this.taskGlobals = parent.taskGlobals;
+        this.environment = environment;
+    }
+
+    // Funkcje wbudowane korzystające ze stanu interpretera (wyjście, kanały); biblioteka liczb
+    // i napisów jest w Builtins. Tablica jest wspólna dla procesu, stan przychodzi jako context
+    private static void registerBuiltins() {
+        Builtins.register(NativeFunction.reserved("print", NativeFunction.VARIADIC, (context, args) -> {
+            for (Value value : args) context.output.print(String.valueOf(value));
+            return VoidValue.INSTANCE;
+        }));
+        Builtins.register(NativeFunction.reserved("println", NativeFunction.VARIADIC, (context, args) -> {
+            for (Value value : args) context.output.print(String.valueOf(value));
+            context.output.println();
+            return VoidValue.INSTANCE;
+        }));
+        Builtins.register(NativeFunction.reserved("flush", 0, (context, args) -> {
+            context.output.flush();
+            return VoidValue.INSTANCE;
+        }));
+
+        // Kanały
+        Builtins.register(NativeFunction.reserved("channel", 1, (context, args) -> {
+            long capacity = context.toLong(args[0]);
+            if (capacity < 1) throw new RuntimeError("Channel capacity must be at least 1");
+            return new ChannelValue((int) capacity);
+        }));
+        Builtins.register(NativeFunction.reserved("send", 2, (context, args) -> {
+            ChannelValue channel = context.toChannel(args[0]);
+            try {
+                channel.queue.put(args[1]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError("Interrupted while sending to channel");
+            }
+            return VoidValue.INSTANCE;
+        }));
+        Builtins.register(NativeFunction.reserved("recv", 1, (context, args) -> {
+            ChannelValue channel = context.toChannel(args[0]);
+            try {
+                return channel.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError("Interrupted while receiving from channel");
+            }
+        }));
+    }
+
+    // ===== INTERPRETACJA PROGRAMU =====
+    public void interpret(Program program) {
+        try {
+            interpretIncrementally(program);
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Wykonuje kolejny fragment programu (np. jedną instrukcję w trybie strumieniowym)
+     * bez opróżniania wyjścia; funkcje i zmienne z wcześniejszych fragmentów są widoczne
+     */
+    public void interpretIncrementally(Program program) {
+        try {
+            // Importy najwyższego poziomu przed analizą czystości, żeby widziała funkcje modułów
+            importModules(program.statements);
+            PurityAnalysis.analyze(program, this::isMemoized);
+            layoutGlobals(program.statements);
+            for (Statement statement : program.statements) {
+                execute(statement);
+            }
+        } catch (RuntimeError e) {
+            output.flush();
+            System.err.println("Runtime Error: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    // Przed wykonaniem: sloty zmiennych najwyższego poziomu (także z if/while, które nie tworzą
+    // zasięgu) i miejsca w tablicy funkcji, żeby wykonanie nie musiało powiększać tablic
+    private void layoutGlobals(List<Statement> statements) {
+        for (Statement statement : statements) {
+            switch (statement.kind) {
+                case Statement.VARIABLE_DECLARATION -> globals.reserve(((VariableDeclaration) statement).symbol);
+                case Statement.FUNCTION_DECLARATION -> functions.reserve(((FunctionDeclaration) statement).symbol);
+                case Statement.IF -> {
+                    IfStatement branch = (IfStatement) statement;
+                    layoutGlobals(branch.thenBranch);
+                    if (branch.elseBranch != null) layoutGlobals(branch.elseBranch);
+                }
+                case Statement.WHILE -> layoutGlobals(((WhileStatement) statement).body);
+                case Statement.PROBE -> layoutGlobals(List.of(((ProbeStatement) statement).statement));
+                default -> { }
+            }
+        }
+    }
+
+    private boolean isMemoized(String name) {
+        Function function = functions.get(Symbols.intern(name));
+        return function != null ? function.memoized : Builtins.isPure(name);
+    }
+
+    // ===== WYKONYWANIE INSTRUKCJI =====
+    // Jeden switch po znaczniku rodzaju zamiast drabinki instanceof; gałęzie tylko delegują
+    private void execute(Statement statement) {
+        switch (statement.kind) {
+            case Statement.VARIABLE_DECLARATION -> executeVariableDeclaration((VariableDeclaration) statement);
+            case Statement.ASSIGNMENT -> executeAssignment((Assignment) statement);
+            case Statement.INCREMENT_LOCAL -> executeIncrementLocal((IncrementLocal) statement);
+            case Statement.IF -> executeIfStatement((IfStatement) statement);
+            case Statement.WHILE -> executeWhileStatement((WhileStatement) statement);
+            case Statement.FOR -> executeForStatement((ForStatement) statement);
+            case Statement.PARALLEL_FOR -> executeParallelForStatement((ParallelForStatement) statement);
+            case Statement.RETURN -> executeReturnStatement((ReturnStatement) statement);
+            case Statement.RETURN_BINARY -> executeReturnBinary((ReturnBinary) statement);
+            case Statement.EXPRESSION -> evaluate(((ExpressionStatement) statement).expression);
+            case Statement.BLOCK -> executeBlockStatement((BlockStatement) statement);
+            case Statement.FUNCTION_DECLARATION -> executeFunctionDeclaration((FunctionDeclaration) statement);
+            case Statement.PROBE -> executeProbeStatement((ProbeStatement) statement);
+            case Statement.IMPORT -> importModule(((ImportStatement) statement).path);
+            default -> throw new RuntimeError("Unknown statement type: " + statement.getClass().getName());
+        }
+    }
+
+    // Tylko instrukcje z założoną sondą (breakpoint, krok, pokrycie) - reszta programu nie płaci nic
+    private void executeProbeStatement(ProbeStatement site) {
+        execute(site.probe.reached(site, environment));
+    }
+
+    private void executeVariableDeclaration(VariableDeclaration stmt) {
+        Value value = VoidValue.INSTANCE;
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+        }
+        environment.declare(stmt.symbol, stmt.type, coerce(stmt.type, value));
+    }
+
+    private void executeAssignment(Assignment stmt) {
+        Value value = evaluate(stmt.value);
+        environment.assign(stmt.symbol, value);
+    }
+
+    private void executeIncrementLocal(IncrementLocal stmt) {
+        Environment owner = environment.resolve(stmt.symbol);
+        if (owner != null) {
+            int slot = owner.slotOf(stmt.symbol);
+            if (owner.tagAt(slot) == Value.INT) {
+                owner.setLongAt(slot, owner.longAt(slot) + stmt.delta);
+                return;
+            }
+        }
+        executeAssignment(stmt);
+    }
+
+    private void executeIfStatement(IfStatement stmt) {
+        Value condition = evaluate(stmt.condition);
+        if (isTruthy(condition)) {
+            for (Statement s : stmt.thenBranch) {
+                execute(s);
+            }
+        } else if (stmt.elseBranch != null) {
+            for (Statement s : stmt.elseBranch) {
+                execute(s);
+            }
+        }
+    }
+
+    private void executeWhileStatement(WhileStatement stmt) {
+        while (isTruthy(evaluate(stmt.condition))) {
+            for (Statement s : stmt.body) {
+                execute(s);
+            }
+        }
+    }
+
+    private void executeForStatement(ForStatement stmt) {
+        Environment previous = environment;
+        Environment scope = stmt.declaresLocals ? acquireScope(environment, stmt.capturesScope) : environment;
+        try {
+            environment = scope;
+
+            CountedLoop counted = stmt.countedLoop;
+            if (counted != null) {
+                Value start = evaluate(counted.start);
+                if (start instanceof IntValue) {
+                    executeCountedLoop(counted, ((IntValue) start).value, stmt.body);
+                    return;
+                }
+                // Start nie jest liczbą całkowitą - zwykła ścieżka bez ponownej inicjalizacji
+                environment.define(counted.symbol, start);
+            } else if (stmt.initializer != null) {
+                execute(stmt.initializer);
+            }
+
+            while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
+                for (Statement s : stmt.body) {
+                    execute(s);
+                }
+
+                if (stmt.increment != null) {
+                    execute(stmt.increment);
+                }
+            }
+        } finally {
+            environment = previous;
+            if (stmt.declaresLocals) releaseScope(scope, stmt.capturesScope);
+        }
+    }
+
+    // Szybka ścieżka pętli licznikowej: natywny licznik, bez ewaluacji warunku i inkrementacji przez AST
+    private void executeCountedLoop(CountedLoop loop, long start, List<Statement> body) {
+        int variable = loop.symbol;
+        long step = loop.step;
+        environment.define(variable, new IntValue(start));
+        int slot = environment.slotOf(variable);
+
+        for (long i = start; ; i += step) {
+            Value bound = loop.constantBound ? null : evaluate(loop.bound);
+            if (!countedLoopContinues(loop, i, bound)) {
+                break;
+            }
+            if (loop.readsVariable) {
+                // Licznik trafia do slotu jako surowy long; Value powstaje dopiero przy odczycie
+                environment.setLongAt(slot, i);
+            }
+            for (Statement s : body) {
+                execute(s);
+            }
+        }
+    }
+
+    private boolean countedLoopContinues(CountedLoop loop, long i, Value bound) {
+        if (bound == null || bound instanceof IntValue) {
+            long limit = bound == null ? loop.boundValue : ((IntValue) bound).value;
+            return switch (loop.operator) {
+                case LESS -> i < limit;
+                case LESS_EQUAL -> i <= limit;
+                case GREATER -> i > limit;
+                case GREATER_EQUAL -> i >= limit;
+                default -> i != limit;
+            };
+        }
+        return isTruthy(applyBinaryOperator(loop.operator, new IntValue(i), bound));
+    }
+
+    // ===== PARALLEL FOR =====
+    // Zakres iteracji liczony jest raz przed startem, potem dzielony na fork-join pool.
+    // Każdy wątek ma własne środowisko pętli; zmienne z reduce(...) dostają lokalne kopie
+    // zainicjowane elementem neutralnym i są łączone w kolejności zakresów.
+    private void executeParallelForStatement(ParallelForStatement stmt) {
+        ForStatement loop = stmt.loop;
+        String variable;
+        Expression startExpr;
+        if (loop.initializer instanceof VariableDeclaration) {
+            variable = ((VariableDeclaration) loop.initializer).name;
+            startExpr = ((VariableDeclaration) loop.initializer).initializer;
+        } else if (loop.initializer instanceof Assignment) {
+            variable = ((Assignment) loop.initializer).name;
+            startExpr = ((Assignment) loop.initializer).value;
+        } else {
+            throw new RuntimeError("parallel for requires a loop variable initializer");
+        }
+
+        if (!(loop.condition instanceof BinaryOperation cond)
+                || !(cond.left instanceof Identifier condVar) || !condVar.name.equals(variable)) {
+            throw new RuntimeError("parallel for condition must compare the loop variable: " + variable);
+        }
+        if (!(loop.increment instanceof Assignment inc) || !inc.name.equals(variable)
+                || !(inc.value instanceof BinaryOperation step)
+                || !(step.left instanceof Identifier stepVar) || !stepVar.name.equals(variable)
+                || (step.operator != Lexer.TokenType.PLUS && step.operator != Lexer.TokenType.MINUS)) {
+            throw new RuntimeError("parallel for increment must be " + variable + " = " + variable + " +/- step");
+        }
+
+        long start = toLong(evaluate(startExpr));
+        long bound = toLong(evaluate(cond.right));
+        long stride = toLong(evaluate(step.right));
+        if (step.operator == Lexer.TokenType.MINUS) stride = -stride;
+        if (stride == 0) throw new RuntimeError("parallel for step must not be zero");
+
+        long count = switch (cond.operator) {
+            case LESS -> stride > 0 && start < bound ? (bound - start + stride - 1) / stride : 0;
+            case LESS_EQUAL -> stride > 0 && start <= bound ? (bound - start) / stride + 1 : 0;
+            case GREATER -> stride < 0 && start > bound ? (start - bound - stride - 1) / -stride : 0;
+            case GREATER_EQUAL -> stride < 0 && start >= bound ? (start - bound) / -stride + 1 : 0;
+            default -> throw new RuntimeError("parallel for condition must use <, <=, > or >=");
+        };
+
+        Value[] initial = new Value[stmt.reductions.size()];
+        for (int r = 0; r < initial.length; r++) {
+            initial[r] = environment.get(stmt.reductions.get(r).symbol);
+        }
+
+        long grain = Math.max(1, count / (ForkJoinPool.getCommonPoolParallelism() * 4L));
+        ParallelRangeTask task = new ParallelRangeTask(stmt, Symbols.intern(variable), start, stride, 0, count, grain, initial);
+        Value[] partial = ForkJoinPool.commonPool().invoke(task);
+
+        for (int r = 0; r < initial.length; r++) {
+            Reduction reduction = stmt.reductions.get(r);
+            environment.assign(reduction.symbol, applyBinaryOperator(reduction.operator, initial[r], partial[r]));
+        }
+    }
+
+    private class ParallelRangeTask extends RecursiveTask<Value[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ParallelForStatement stmt;
+        private final int variable;
+        private final long start, stride, from, to, grain;
+        private final transient Value[] initial;
+
+        ParallelRangeTask(ParallelForStatement stmt, int variable, long start, long stride,
+                          long from, long to, long grain, Value[] initial) {
+            this.stmt = stmt;
+            this.variable = variable;
+            this.start = start;
+            this.stride = stride;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.initial = initial;
+        }
+
+        @Override
+        protected Value[] compute() {
+            if (to - from > grain) {
+                long mid = from + (to - from) / 2;
+                ParallelRangeTask left = new ParallelRangeTask(stmt, variable, start, stride, from, mid, grain, initial);
+                ParallelRangeTask right = new ParallelRangeTask(stmt, variable, start, stride, mid, to, grain, initial);
+                right.fork();
+                Value[] a = left.compute();
+                Value[] b = right.join();
+                for (int r = 0; r < a.length; r++) {
+                    a[r] = applyBinaryOperator(stmt.reductions.get(r).operator, a[r], b[r]);
+                }
+                return a;
+            }
+
+            Environment loopEnv = new Environment(environment);
+            for (int r = 0; r < initial.length; r++) {
+                Reduction reduction = stmt.reductions.get(r);
+                loopEnv.define(reduction.symbol, reductionIdentity(reduction.operator, initial[r]));
+            }
+
+            interpreter worker = new interpreter(interpreter.this, loopEnv);
+            try {
+                for (long k = from; k < to; k++) {
+                    loopEnv.define(variable, new IntValue(start + k * stride));
+                    for (Statement s : stmt.loop.body) {
+                        worker.execute(s);
+                    }
+                }
+            } catch (ReturnException e) {
+                throw new RuntimeError("return is not allowed inside parallel for");
+            }
+
+            Value[] result = new Value[initial.length];
+            for (int r = 0; r < result.length; r++) {
+                result[r] = loopEnv.get(stmt.reductions.get(r).symbol);
+            }
+            return result;
+        }
+    }
+
+    private Value reductionIdentity(Lexer.TokenType operator, Value initial) {
+        switch (operator) {
+            case PLUS:
+                if (initial instanceof DoubleValue) return new DoubleValue(0);
+                if (initial instanceof Int128Value) return Int128Value.ZERO;
+                if (initial instanceof StringValue) return new StringValue("");
+                return new IntValue(0);
+            case STAR:
+                if (initial instanceof DoubleValue) return new DoubleValue(1);
+                if (initial instanceof Int128Value) return Int128Value.of(1);
+                return new IntValue(1);
+            case AND:
+                return new BoolValue(true);
+            case OR:
+                return new BoolValue(false);
+        }
+        throw new RuntimeError("Unsupported reduction operator: " + operator);
+    }
+
+    private void executeReturnBinary(ReturnBinary stmt) {
+        BinaryOperation op = stmt.operation;
+        throw new ReturnException(applyBinaryOperator(op.operator, evaluate(op.left), evaluate(op.right)));
+    }
+
+    private void executeReturnStatement(ReturnStatement stmt) {
+        Value value = VoidValue.INSTANCE;
+        if (stmt.value != null) {
+            value = evaluate(stmt.value);
+        }
+        throw new ReturnException(value);
+    }
+
+    private void executeBlockStatement(BlockStatement block) {
+        if (!block.declaresLocals) {
+            for (Statement statement : block.statements) {
+                execute(statement);
+            }
+            return;
+        }
+
+        Environment scope = acquireScope(environment, block.capturesScope);
+        try {
+            executeBlock(block, scope);
+        } finally {
+            releaseScope(scope, block.capturesScope);
+        }
+    }
+
+    private Environment acquireScope(Environment parent, boolean captured) {
+        if (captured) {
+            return new Environment(parent);
+        }
+        Environment scope = scopePool.pollLast();
+        if (scope == null) {
+            return new Environment(parent);
+        }
+        scope.reuse(parent);
+        return scope;
+    }
+
+    private void releaseScope(Environment scope, boolean captured) {
+        if (captured) return;
+        scope.release();
+        if (scopePool.size() < SCOPE_POOL_LIMIT) {
+            scopePool.addLast(scope);
+        }
+    }
+
+    private void executeBlock(BlockStatement block, Environment env) {
+        Environment previous = environment;
+        try {
+            environment = env;
+            for (Statement statement : block.statements) {
+                execute(statement);
+            }
+        } finally {
+            environment = previous;
+        }
+    }
+
+    private void executeFunctionDeclaration(FunctionDeclaration stmt) {
+        Function function = new Function(stmt, environment);
+        if (functions.put(stmt.symbol, function) != null) {
+            invalidateCallers(stmt.name);
+        }
     }
 
-    Value get(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        }
-        if (parent != null) {
-            return parent.get(name);
+    // Nadpisana funkcja mogła stracić czystość: wyłącz zapamiętywanie wszystkich funkcji,
+    // które (pośrednio) ją wywołują, i wyczyść zapamiętane wyniki
+    private void invalidateCallers(String name) {
+        Set<String> changed = new HashSet<>(Set.of(name));
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (Function f : functions.values()) {
+                if (f.memoized && !f.cached && !changed.contains(f.name) && !Collections.disjoint(f.callees, changed)) {
+                    f.memoized = false;
+                    changed.add(f.name);
+                    found = true;
+                }
+            }
         }
-        throw new RuntimeError("Undefined variable: " + name);
+        memo.clear();
     }
 
-    void assign(String name, Value value) {
-        if (variables.containsKey(name)) {
-            variables.put(name, value);
-            return;
+    // ===== PŁASKIE AST (AstArena) =====
+    /**
+     * Wykonuje program zapisany w arenie, chodząc po indeksach węzłów. Rzadkie konstrukcje
+     * (parallel for, spawn, await, wywołania funkcji wbudowanych) są odtwarzane jako obiekty
+     * i idą zwykłą ścieżką
+     */
+    public void interpret(AstArena arena) {
+        for (int i = 0; i < arena.topLevelCount(); i++) {
+            layoutGlobals(arena, arena.topLevel(i));
         }
-        if (parent != null) {
-            parent.assign(name, value);
-            return;
+        try {
+            for (int i = 0; i < arena.topLevelCount(); i++) {
+                executeNode(arena, arena.topLevel(i));
+            }
+        } catch (RuntimeError e) {
+            output.flush();
+            System.err.println("Runtime Error: " + e.getMessage());
+            throw e;
+        } finally {
+            output.flush();
         }
-        throw new RuntimeError("Undefined variable: " + name);
-    }
-
-    boolean isDefined(String name) {
-        if (variables.containsKey(name)) return true;
-        if (parent != null) return parent.isDefined(name);
-        return false;
     }
-}
-
-// ===== FUNKCJA =====
-class Function {
-    final String name;
-    final List<Parameter> parameters;
-    final List<Statement> body;
-    final Environment closure;
 
-    Function(String name, List<Parameter> parameters, List<Statement> body, Environment closure) {
-        this.name = name;
-        this.parameters = parameters;
-        this.body = body;
-        this.closure = closure;
+    private void layoutGlobals(AstArena arena, int n) {
+        switch (arena.kind(n)) {
+            case Statement.VARIABLE_DECLARATION -> globals.reserve(arena.b(n));
+            case Statement.FUNCTION_DECLARATION -> functions.reserve(arena.functionSymbol(n));
+            case Statement.IF -> {
+                layoutGlobalList(arena, arena.b(n));
+                if (arena.c(n) != AstArena.NONE) layoutGlobalList(arena, arena.c(n));
+            }
+            case Statement.WHILE -> layoutGlobalList(arena, arena.b(n));
+            default -> { }
+        }
     }
-}
-
-// ===== INTERPRETER =====
-class interpreter {
-    private Environment globals = new Environment();
-    private Environment environment = globals;
-    private Map<String, Function> functions = new HashMap<>();
 
-    public interpreter() {
-        // Rejestracja wbudowanych funkcji
-        registerBuiltins();
+    private void layoutGlobalList(AstArena arena, int list) {
+        for (int i = 0; i < arena.listSize(list); i++) {
+            layoutGlobals(arena, arena.listItem(list, i));
+        }
     }
 
-    private void registerBuiltins() {
-        // Możesz tutaj dodać wbudowane funkcje
+    private void executeNodes(AstArena arena, int list) {
+        int count = arena.listSize(list);
+        for (int i = 0; i < count; i++) {
+            executeNode(arena, arena.listItem(list, i));
+        }
     }
 
-    // ===== INTERPRETACJA PROGRAMU =====
-    public void interpret(Program program) {
-        try {
-            for (Statement statement : program.statements) {
-                execute(statement);
-            }
-        } catch (RuntimeError e) {
-            System.err.println("Runtime Error: " + e.getMessage());
-            throw e;
+    // Jak w execute: gałęzie tylko delegują
+    private void executeNode(AstArena arena, int n) {
+        switch (arena.kind(n)) {
+            case Statement.VARIABLE_DECLARATION -> executeVariableNode(arena, n);
+            case Statement.ASSIGNMENT -> environment.assign(arena.a(n), evaluateNode(arena, arena.b(n)));
+            case Statement.IF -> executeIfNode(arena, n);
+            case Statement.WHILE -> executeWhileNode(arena, n);
+            case Statement.FOR -> executeForNode(arena, n);
+            case Statement.PARALLEL_FOR -> executeParallelForStatement((ParallelForStatement) arena.decodeStatement(n));
+            case Statement.RETURN -> executeReturnNode(arena, n);
+            case Statement.EXPRESSION -> evaluateNode(arena, arena.a(n));
+            case Statement.BLOCK -> executeNodesIn(arena, arena.a(n), new Environment(environment));
+            case Statement.FUNCTION_DECLARATION -> executeFunctionNode(arena, n);
+            case Statement.IMPORT -> importModule(arena.importPath(n));
+            default -> throw new RuntimeError("Unknown statement node kind: " + arena.kind(n));
         }
     }
 
-    // ===== WYKONYWANIE INSTRUKCJI =====
-    private void execute(Statement statement) {
-        if (statement instanceof VariableDeclaration) {
-            executeVariableDeclaration((VariableDeclaration) statement);
-        } else if (statement instanceof Assignment) {
-            executeAssignment((Assignment) statement);
-        } else if (statement instanceof IfStatement) {
-            executeIfStatement((IfStatement) statement);
-        } else if (statement instanceof WhileStatement) {
-            executeWhileStatement((WhileStatement) statement);
-        } else if (statement instanceof ForStatement) {
-            executeForStatement((ForStatement) statement);
-        } else if (statement instanceof ReturnStatement) {
-            executeReturnStatement((ReturnStatement) statement);
-        } else if (statement instanceof ExpressionStatement) {
-            evaluate(((ExpressionStatement) statement).expression);
-        } else if (statement instanceof BlockStatement) {
-            executeBlock((BlockStatement) statement, new Environment(environment));
-        } else if (statement instanceof FunctionDeclaration) {
-            executeFunctionDeclaration((FunctionDeclaration) statement);
-        }
+    private void executeVariableNode(AstArena arena, int n) {
+        int initializer = arena.c(n);
+        Value value = initializer == AstArena.NONE ? VoidValue.INSTANCE : evaluateNode(arena, initializer);
+        Lexer.TokenType type = AstArena.tokenType(arena.a(n));
+        environment.declare(arena.b(n), type, coerce(type, value));
     }
 
-    private void executeVariableDeclaration(VariableDeclaration stmt) {
-        Value value = VoidValue.INSTANCE;
-        if (stmt.initializer != null) {
-            value = evaluate(stmt.initializer);
+    private void executeIfNode(AstArena arena, int n) {
+        if (isTruthy(evaluateNode(arena, arena.a(n)))) {
+            executeNodes(arena, arena.b(n));
+        } else if (arena.c(n) != AstArena.NONE) {
+            executeNodes(arena, arena.c(n));
         }
-        environment.define(stmt.name, value);
     }
 
-    private void executeAssignment(Assignment stmt) {
-        Value value = evaluate(stmt.value);
-        environment.assign(stmt.name, value);
+    private void executeWhileNode(AstArena arena, int n) {
+        while (isTruthy(evaluateNode(arena, arena.a(n)))) {
+            executeNodes(arena, arena.b(n));
+        }
     }
 
-    private void executeIfStatement(IfStatement stmt) {
-        Value condition = evaluate(stmt.condition);
-        if (isTruthy(condition)) {
-            for (Statement s : stmt.thenBranch) {
-                execute(s);
-            }
-        } else if (stmt.elseBranch != null) {
-            for (Statement s : stmt.elseBranch) {
-                execute(s);
-            }
+    // return a op b liczone na miejscu jak ReturnBinary - o jedną ramkę mniej na poziom rekurencji
+    private void executeReturnNode(AstArena arena, int n) {
+        int value = arena.a(n);
+        if (value == AstArena.NONE) throw new ReturnException(VoidValue.INSTANCE);
+        if (arena.kind(value) == AstArena.EXPRESSION + Expression.BINARY) {
+            throw new ReturnException(applyBinaryOperator(AstArena.tokenType(arena.b(value)),
+                    evaluateNode(arena, arena.a(value)), evaluateNode(arena, arena.c(value))));
         }
+        throw new ReturnException(evaluateNode(arena, value));
     }
 
-    private void executeWhileStatement(WhileStatement stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
-            for (Statement s : stmt.body) {
-                execute(s);
-            }
+    private void executeFunctionNode(AstArena arena, int n) {
+        Function function = new Function(arena, n, environment);
+        if (functions.put(function.symbol, function) != null) {
+            invalidateCallers(function.name);
         }
     }
 
-    private void executeForStatement(ForStatement stmt) {
+    private void executeForNode(AstArena arena, int n) {
         Environment previous = environment;
         try {
             environment = new Environment(environment);
-
-            if (stmt.initializer != null) {
-                execute(stmt.initializer);
+            if (arena.a(n) != AstArena.NONE) {
+                executeNode(arena, arena.a(n));
             }
-
-            while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
-                for (Statement s : stmt.body) {
-                    execute(s);
-                }
-
-                if (stmt.increment != null) {
-                    execute(stmt.increment);
+            int condition = arena.b(n);
+            int increment = arena.c(n);
+            while (condition == AstArena.NONE || isTruthy(evaluateNode(arena, condition))) {
+                executeNodes(arena, arena.d(n));
+                if (increment != AstArena.NONE) {
+                    executeNode(arena, increment);
                 }
             }
         } finally {
@@ -254,66 +1591,133 @@ class interpreter {
         }
     }
 
-    private void executeReturnStatement(ReturnStatement stmt) {
-        Value value = VoidValue.INSTANCE;
-        if (stmt.value != null) {
-            value = evaluate(stmt.value);
-        }
-        throw new ReturnException(value);
-    }
-
-    private void executeBlock(BlockStatement block, Environment env) {
+    private void executeNodesIn(AstArena arena, int list, Environment env) {
         Environment previous = environment;
         try {
             environment = env;
-            for (Statement statement : block.statements) {
-                execute(statement);
-            }
+            executeNodes(arena, list);
         } finally {
             environment = previous;
         }
     }
 
-    private void executeFunctionDeclaration(FunctionDeclaration stmt) {
-        Function function = new Function(stmt.name, stmt.parameters, stmt.body, environment);
-        functions.put(stmt.name, function);
+    private Value evaluateNode(AstArena arena, int n) {
+        return switch (arena.kind(n) - AstArena.EXPRESSION) {
+            case Expression.NUMBER_LITERAL -> evaluateNumberNode(arena, arena.a(n));
+            case Expression.STRING_LITERAL -> (StringValue) arena.constant(arena.a(n));
+            case Expression.BOOLEAN_LITERAL -> BoolValue.of(arena.a(n) != 0);
+            case Expression.IDENTIFIER -> environment.get(arena.a(n));
+            case Expression.BINARY -> applyBinaryOperator(AstArena.tokenType(arena.b(n)),
+                    evaluateNode(arena, arena.a(n)), evaluateNode(arena, arena.c(n)));
+            case Expression.UNARY -> applyUnaryOperator(AstArena.tokenType(arena.a(n)), evaluateNode(arena, arena.b(n)));
+            case Expression.CALL -> evaluateCallNode(arena, n);
+            case Expression.SPAWN, Expression.AWAIT -> evaluate(arena.decodeExpression(n));
+            default -> throw new RuntimeError("Unknown expression node kind: " + arena.kind(n));
+        };
+    }
+
+    // Tekst literału jest parsowany raz; wartości są niemutowalne, więc wyścig wątków jest nieszkodliwy
+    private Value evaluateNumberNode(AstArena arena, int constant) {
+        Object literal = arena.constant(constant);
+        if (literal instanceof Value value) return value;
+        Value value = parseNumber((String) literal);
+        arena.replaceConstant(constant, value);
+        return value;
+    }
+
+    private Value evaluateCallNode(AstArena arena, int n) {
+        int symbol = arena.a(n);
+        Function function = functions.get(symbol);
+        int list = arena.b(n);
+        int count = arena.listSize(list);
+        if (function == null || Builtins.isReserved(symbol)) {
+            NativeFunction builtin = Builtins.get(symbol);
+            // Błędy - zwykła ścieżka
+            if (builtin == null) return evaluateFunctionCall((FunctionCall) arena.decodeExpression(n));
+            // Węzeł areny nie ma miejsca na powiązanie - liczba argumentów przy każdym wywołaniu
+            RuntimeError error = builtin.arityError(count);
+            if (error != null) throw error;
+            return switch (builtin.arity) {
+                case 1 -> builtin.call(this, evaluateNode(arena, arena.listItem(list, 0)));
+                case 2 -> builtin.call(this, evaluateNode(arena, arena.listItem(list, 0)),
+                        evaluateNode(arena, arena.listItem(list, 1)));
+                default -> {
+                    Value[] arguments = new Value[count];
+                    for (int i = 0; i < count; i++) {
+                        arguments[i] = evaluateNode(arena, arena.listItem(list, i));
+                    }
+                    yield builtin.handler.call(this, arguments);
+                }
+            };
+        }
+
+        if (count != function.parameters.size()) throw argumentCountError(function, count);
+        List<Value> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            arguments.add(evaluateNode(arena, arena.listItem(list, i)));
+        }
+        return callFunction(function, arguments);
+    }
+
+    private RuntimeError argumentCountError(Function function, int count) {
+        return new RuntimeError("Expected " + function.parameters.size() + " arguments but got " + count);
     }
 
     // ===== EWALUACJA WYRAŻEŃ =====
     private Value evaluate(Expression expr) {
-        if (expr instanceof NumberLiteral) {
-            return evaluateNumberLiteral((NumberLiteral) expr);
-        } else if (expr instanceof StringLiteral) {
-            return new StringValue(((StringLiteral) expr).value);
-        } else if (expr instanceof BooleanLiteral) {
-            return new BoolValue(((BooleanLiteral) expr).value);
-        } else if (expr instanceof Identifier) {
-            return environment.get(((Identifier) expr).name);
-        } else if (expr instanceof BinaryOperation) {
-            return evaluateBinaryOperation((BinaryOperation) expr);
-        } else if (expr instanceof UnaryOperation) {
-            return evaluateUnaryOperation((UnaryOperation) expr);
-        } else if (expr instanceof FunctionCall) {
-            return evaluateFunctionCall((FunctionCall) expr);
-        }
+        return switch (expr.kind) {
+            case Expression.NUMBER_LITERAL -> evaluateNumberLiteral((NumberLiteral) expr);
+            case Expression.STRING_LITERAL -> new StringValue(((StringLiteral) expr).value);
+            case Expression.BOOLEAN_LITERAL -> BoolValue.of(((BooleanLiteral) expr).value);
+            case Expression.IDENTIFIER -> environment.get(((Identifier) expr).symbol);
+            case Expression.BINARY -> evaluateBinaryOperation((BinaryOperation) expr);
+            case Expression.COMPARE_LOCALS -> evaluateCompareLocals((CompareLocals) expr);
+            case Expression.COMPARE_LOCAL_CONSTANT -> evaluateCompareLocalConstant((CompareLocalConstant) expr);
+            case Expression.UNARY -> evaluateUnaryOperation((UnaryOperation) expr);
+            case Expression.CALL -> evaluateFunctionCall((FunctionCall) expr);
+            case Expression.CALL_LOCALS -> evaluateCallLocals((CallLocals) expr);
+            case Expression.SPAWN -> evaluateSpawn((SpawnExpression) expr);
+            case Expression.AWAIT -> evaluateAwait((AwaitExpression) expr);
+            case Expression.BRANCH_PROBE -> evaluateBranchProbe((BranchProbe) expr);
+            default -> throw new RuntimeError("Unknown expression type: " + expr.getClass().getName());
+        };
+    }
 
-        throw new RuntimeError("Unknown expression type: " + expr.getClass().getName());
+    private Value evaluateBranchProbe(BranchProbe probe) {
+        Value value = evaluate(probe.condition);
+        probe.coverage.branchTaken(probe, isTruthy(value));
+        return value;
     }
 
     private Value evaluateNumberLiteral(NumberLiteral literal) {
-        String value = literal.value;
+        return parseNumber(literal.value);
+    }
+
+    private Value parseNumber(String value) {
         if (value.contains(".")) {
             return new DoubleValue(Double.parseDouble(value));
-        } else {
+        }
+        try {
             return new IntValue(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            // Literał poza zakresem int64 - próbujemy jako int128
+            if (value.replace("-", "").length() > 39) {
+                throw new RuntimeError("Integer literal out of range: " + value);
+            }
+            return Int128Value.parse(value);
         }
     }
 
     private Value evaluateBinaryOperation(BinaryOperation expr) {
-        Value left = evaluate(expr.left);
-        Value right = evaluate(expr.right);
+        return applyBinaryOperator(expr.operator, evaluate(expr.left), evaluate(expr.right));
+    }
+
+    private Value applyBinaryOperator(Lexer.TokenType operator, Value left, Value right) {
+        if ((left instanceof Int128Value || right instanceof Int128Value) && isInteger(left) && isInteger(right)) {
+            return evaluateInt128Operation(operator, toInt128(left), toInt128(right));
+        }
 
-        switch (expr.operator) {
+        switch (operator) {
             case PLUS:
                 if (left instanceof IntValue && right instanceof IntValue) {
                     return new IntValue(((IntValue) left).value + ((IntValue) right).value);
@@ -379,13 +1783,79 @@ class interpreter {
                 return new BoolValue(isTruthy(left) || isTruthy(right));
         }
 
-        throw new RuntimeError("Unsupported binary operation: " + expr.operator);
+        throw new RuntimeError("Unsupported binary operation: " + operator);
+    }
+
+    private Value evaluateCompareLocals(CompareLocals expr) {
+        Environment leftOwner = environment.resolve(expr.leftSymbol);
+        Environment rightOwner = environment.resolve(expr.rightSymbol);
+        if (leftOwner != null && rightOwner != null) {
+            int l = leftOwner.slotOf(expr.leftSymbol);
+            int r = rightOwner.slotOf(expr.rightSymbol);
+            if (leftOwner.tagAt(l) == Value.INT && rightOwner.tagAt(r) == Value.INT) {
+                return BoolValue.of(compareLongs(expr.operator, leftOwner.longAt(l), rightOwner.longAt(r)));
+            }
+        }
+        Value left = environment.get(expr.leftSymbol);
+        Value right = environment.get(expr.rightSymbol);
+        if (left instanceof IntValue && right instanceof IntValue) {
+            return BoolValue.of(compareLongs(expr.operator, ((IntValue) left).value, ((IntValue) right).value));
+        }
+        return applyBinaryOperator(expr.operator, left, right);
+    }
+
+    private Value evaluateCompareLocalConstant(CompareLocalConstant expr) {
+        Environment owner = environment.resolve(expr.leftSymbol);
+        if (owner != null) {
+            int slot = owner.slotOf(expr.leftSymbol);
+            if (owner.tagAt(slot) == Value.INT) {
+                return BoolValue.of(compareLongs(expr.operator, owner.longAt(slot), expr.constant));
+            }
+        }
+        Value left = environment.get(expr.leftSymbol);
+        if (left instanceof IntValue) {
+            return BoolValue.of(compareLongs(expr.operator, ((IntValue) left).value, expr.constant));
+        }
+        return applyBinaryOperator(expr.operator, left, new IntValue(expr.constant));
+    }
+
+    private boolean compareLongs(Lexer.TokenType operator, long a, long b) {
+        return switch (operator) {
+            case LESS -> a < b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER -> a > b;
+            case GREATER_EQUAL -> a >= b;
+            case EQUAL_EQUAL -> a == b;
+            default -> a != b;
+        };
+    }
+
+    private Value evaluateInt128Operation(Lexer.TokenType operator, Int128Value left, Int128Value right) {
+        switch (operator) {
+            case PLUS: return left.add(right);
+            case MINUS: return left.sub(right);
+            case STAR: return left.mul(right);
+            case SLASH: return left.div(right);
+            case MOD: return left.mod(right);
+            case EQUAL_EQUAL: return new BoolValue(left.compareTo(right) == 0);
+            case BANG_EQUAL: return new BoolValue(left.compareTo(right) != 0);
+            case GREATER: return new BoolValue(left.compareTo(right) > 0);
+            case GREATER_EQUAL: return new BoolValue(left.compareTo(right) >= 0);
+            case LESS: return new BoolValue(left.compareTo(right) < 0);
+            case LESS_EQUAL: return new BoolValue(left.compareTo(right) <= 0);
+            case AND: return new BoolValue(!left.isZero() && !right.isZero());
+            case OR: return new BoolValue(!left.isZero() || !right.isZero());
+        }
+
+        throw new RuntimeError("Unsupported binary operation: " + operator);
     }
 
     private Value evaluateUnaryOperation(UnaryOperation expr) {
-        Value operand = evaluate(expr.operand);
+        return applyUnaryOperator(expr.operator, evaluate(expr.operand));
+    }
 
-        switch (expr.operator) {
+    private Value applyUnaryOperator(Lexer.TokenType operator, Value operand) {
+        switch (operator) {
             case MINUS:
                 if (operand instanceof IntValue) {
                     return new IntValue(-((IntValue) operand).value);
@@ -393,80 +1863,315 @@ class interpreter {
                 if (operand instanceof DoubleValue) {
                     return new DoubleValue(-((DoubleValue) operand).value);
                 }
+                if (operand instanceof Int128Value) {
+                    return ((Int128Value) operand).negate();
+                }
                 throw new RuntimeError("Operand must be a number");
 
             case BANG:
                 return new BoolValue(!isTruthy(operand));
         }
 
-        throw new RuntimeError("Unsupported unary operation: " + expr.operator);
+        throw new RuntimeError("Unsupported unary operation: " + operator);
     }
 
     private Value evaluateFunctionCall(FunctionCall call) {
-        // Sprawdź wbudowane funkcje
-        if (call.functionName.equals("print") || call.functionName.equals("println")) {
-            for (Expression arg : call.arguments) {
-                Value val = evaluate(arg);
-                System.out.print(val);
-            }
-            if (call.functionName.equals("println")) {
-                System.out.println();
+        Function function = functions.get(call.symbol);
+        // Funkcje wbudowane: zastrzeżone zawsze, pozostałe, gdy użytkownik nie zdefiniował swojej
+        if (function == null || Builtins.isReserved(call.symbol)) {
+            NativeFunction builtin = call.builtin;
+            if (builtin == null) builtin = bindBuiltin(call);
+            if (builtin != null) return callBuiltin(builtin, call);
+            throw new RuntimeError("Undefined function: " + call.functionName);
+        }
+        if (call.arguments.size() != function.parameters.size()) {
+            throw argumentCountError(function, call.arguments.size());
+        }
+        List<Value> arguments = new ArrayList<>(call.arguments.size());
+        for (Expression arg : call.arguments) {
+            arguments.add(evaluate(arg));
+        }
+        return callFunction(function, arguments);
+    }
+
+    // Wiązanie miejsca wywołania z funkcją wbudowaną: liczba argumentów sprawdzana raz.
+    // Wyścig wątków (także przez AST modułów) jest nieszkodliwy - każdy zapisze to samo
+    private NativeFunction bindBuiltin(FunctionCall call) {
+        NativeFunction builtin = Builtins.get(call.symbol);
+        if (builtin == null) return null;
+        RuntimeError error = builtin.arityError(call.arguments.size());
+        if (error != null) throw error;
+        call.builtin = builtin;
+        return builtin;
+    }
+
+    private Value callBuiltin(NativeFunction builtin, FunctionCall call) {
+        List<Expression> arguments = call.arguments;
+        return switch (builtin.arity) {
+            case 1 -> builtin.call(this, evaluate(arguments.get(0)));
+            case 2 -> builtin.call(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+            default -> {
+                Value[] values = new Value[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i));
+                }
+                yield builtin.handler.call(this, values);
             }
-            return VoidValue.INSTANCE;
+        };
+    }
+
+    // Wywołanie z samymi zmiennymi jako argumentami: odczyt wprost ze środowiska
+    private Value evaluateCallLocals(CallLocals call) {
+        Function function = functions.get(call.symbol);
+        if (function == null || Builtins.isReserved(call.symbol)) {
+            // Funkcje wbudowane (zastrzeżone przed funkcjami użytkownika) i błędy - zwykła ścieżka
+            return evaluateFunctionCall(call);
+        }
+        if (call.argumentSymbols.length != function.parameters.size()) {
+            throw new RuntimeError("Expected " + function.parameters.size() +
+                    " arguments but got " + call.argumentSymbols.length);
+        }
+
+        List<Value> arguments = new ArrayList<>(call.argumentSymbols.length);
+        for (int symbol : call.argumentSymbols) {
+            arguments.add(environment.get(symbol));
         }
+        return callFunction(function, arguments);
+    }
 
+    private Function lookupFunction(FunctionCall call) {
         // Sprawdź zdefiniowane funkcje
-        if (!functions.containsKey(call.functionName)) {
+        Function function = functions.get(call.symbol);
+        if (function == null) {
             throw new RuntimeError("Undefined function: " + call.functionName);
         }
 
-        Function function = functions.get(call.functionName);
-
         if (call.arguments.size() != function.parameters.size()) {
             throw new RuntimeError("Expected " + function.parameters.size() +
                     " arguments but got " + call.arguments.size());
         }
+        return function;
+    }
+
+    private Value callFunction(Function function, List<Value> arguments) {
+        if (function.memoized && memo.isEnabled()) {
+            return callMemoized(function, arguments);
+        }
+        return invokeFunction(function, arguments);
+    }
+
+    // Argumenty po koercji są kluczem; wyniki z wartościami bez porównania po zawartości
+    // (zadania, kanały) nie są zapamiętywane
+    private Value callMemoized(Function function, List<Value> arguments) {
+        Value[] key = new Value[arguments.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = coerce(function.parameters.get(i).type, arguments.get(i));
+            if (!MemoCache.isKeyable(key[i])) return invokeFunction(function, arguments);
+        }
 
-        // Utwórz nowe środowisko dla funkcji
-        Environment functionEnv = new Environment(function.closure);
+        Value result = memo.get(function, key);
+        if (result == null) {
+            result = invokeFunction(function, Arrays.asList(key));
+            if (MemoCache.isKeyable(result) || result == VoidValue.INSTANCE) {
+                memo.put(function, key, result);
+            }
+        }
+        return result;
+    }
+
+    private Value invokeFunction(Function function, List<Value> arguments) {
+        function.ensureParsed(this::isMemoized);
+        ModuleInstance module = function.module;
+        if (module != null && !module.initialized) initializeModule(module);
+
+        // Utwórz środowisko dla funkcji (albo użyj closure, gdy ciało niczego nie deklaruje)
+        Environment closure = function.closure;
+        if (taskGlobals != null) closure = taskGlobals.getOrDefault(closure, closure);
+        Environment functionEnv = function.needsFrame
+                ? acquireScope(closure, function.capturesScope)
+                : closure;
 
         // Przypisz argumenty do parametrów
         for (int i = 0; i < function.parameters.size(); i++) {
-            Value argValue = evaluate(call.arguments.get(i));
-            functionEnv.define(function.parameters.get(i).name, argValue);
+            Parameter parameter = function.parameters.get(i);
+            functionEnv.declare(parameter.symbol, parameter.type, coerce(parameter.type, arguments.get(i)));
         }
 
         // Wykonaj ciało funkcji
         Environment previous = environment;
         try {
             environment = functionEnv;
-            for (Statement stmt : function.body) {
-                execute(stmt);
+            if (function.arena != null) {
+                // Pętla wprost tutaj, bez executeNodes - o jedną ramkę mniej na poziom rekurencji
+                AstArena arena = function.arena;
+                int count = arena.listSize(function.bodyList);
+                for (int i = 0; i < count; i++) {
+                    executeNode(arena, arena.listItem(function.bodyList, i));
+                }
+            } else {
+                for (Statement stmt : function.body) {
+                    execute(stmt);
+                }
             }
         } catch (ReturnException e) {
-            return e.value;
+            return coerce(function.returnType, e.value);
         } finally {
             environment = previous;
+            if (function.needsFrame) releaseScope(functionEnv, function.capturesScope);
         }
 
         return VoidValue.INSTANCE;
     }
 
-    // ===== METODY POMOCNICZE =====
-    private boolean isTruthy(Value value) {
-        if (value instanceof BoolValue) {
-            return ((BoolValue) value).value;
+    // ===== MODUŁY (import) =====
+    private void importModules(List<Statement> statements) {
+        for (Statement statement : statements) {
+            if (statement instanceof ImportStatement i) importModule(i.path);
         }
-        if (value instanceof IntValue) {
-            return ((IntValue) value).value != 0;
+    }
+
+    // Funkcje modułu trafiają do tablicy funkcji od razu, kod najwyższego poziomu - przy pierwszym
+    // wywołaniu którejś z nich. Ponowny import tego samego pliku nic nie robi.
+    private void importModule(String path) {
+        Path file = importBase.resolve(path).toAbsolutePath().normalize();
+        if (modules.containsKey(file)) return;
+        ModuleInstance instance = new ModuleInstance(ModuleCache.SHARED.get(file));
+        if (modules.putIfAbsent(file, instance) != null) return;
+
+        Path previousBase = importBase;
+        try {
+            importBase = instance.module.directory;
+            for (String nested : instance.module.imports) {
+                importModule(nested);
+            }
+        } finally {
+            importBase = previousBase;
+        }
+        for (FunctionDeclaration declaration : instance.module.functions) {
+            Function function = new Function(declaration, instance.globals);
+            function.module = instance;
+            if (functions.put(declaration.symbol, function) != null) {
+                invalidateCallers(declaration.name);
+            }
+        }
+    }
+
+    // Kod najwyższego poziomu modułu w jego własnym zasięgu globalnym; inne wątki czekają na koniec.
+    // Moduł jest zainicjalizowany dopiero po udanym wykonaniu; błąd zostaje zapamiętany
+    private void initializeModule(ModuleInstance instance) {
+        synchronized (instance) {
+            if (instance.failure != null) {
+                throw new RuntimeError("Module " + instance.module.path.getFileName()
+                        + " failed to initialize: " + instance.failure.getMessage());
+            }
+            if (instance.initialized || instance.initializing) return;
+            instance.initializing = true;
+            Environment previous = environment;
+            Path previousBase = importBase;
+            try {
+                environment = instance.globals;
+                importBase = instance.module.directory;
+                for (Statement statement : instance.module.initializer) {
+                    execute(statement);
+                }
+            } catch (ReturnException e) {
+                // return na najwyższym poziomie kończy inicjalizację modułu
+            } catch (RuntimeException e) {
+                instance.failure = e;
+                throw e;
+            } finally {
+                environment = previous;
+                importBase = previousBase;
+                instance.initializing = false;
+            }
+            instance.initialized = true;
+        }
+    }
+
+    /**
+     * Katalog, względem którego rozwiązywane są importy skryptu (domyślnie katalog roboczy)
+     */
+    public void setModuleBase(Path directory) {
+        this.importBase = directory;
+    }
+
+    // ===== ZADANIA (spawn / await) =====
+    // Argumenty liczone są w wątku wywołującym, samo wywołanie idzie na wirtualny wątek
+    // z własnym interpreterem: własny stos środowisk i własna kopia zmiennych globalnych
+    // (programu i zainicjalizowanych modułów) z chwili spawn, wspólne są tylko funkcje.
+    // Zadanie nie widzi późniejszych zmian globali wywołującego, a jego zapisy nie wracają
+    // do wywołującego - wyniki przekazuje await i kanały (wartości kanałów są współdzielone).
+    private Value evaluateSpawn(SpawnExpression expr) {
+        Function function = lookupFunction(expr.call);
+        List<Value> arguments = new ArrayList<>(expr.call.arguments.size());
+        for (Expression arg : expr.call.arguments) {
+            arguments.add(evaluate(arg));
+        }
+
+        CompletableFuture<Value> future = new CompletableFuture<>();
+        interpreter worker = taskInterpreter();
+        Thread.ofVirtual().name("cl-task-" + function.name).start(() -> {
+            try {
+                future.complete(worker.callFunction(function, arguments));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return new TaskValue(future);
+    }
+
+    // Kopie robione w wątku wywołującym, więc są spójnym obrazem jego zmiennych.
+    // Klucze to zawsze oryginalne zasięgi (closure funkcji), także przy spawn z wnętrza zadania
+    private interpreter taskInterpreter() {
+        Map<Environment, Environment> copies = new IdentityHashMap<>();
+        GlobalEnvironment taskRoot = globals.copy();
+        if (taskGlobals == null) {
+            copies.put(globals, taskRoot);
+            for (ModuleInstance instance : modules.values()) {
+                if (instance.initialized) copies.put(instance.globals, instance.globals.copy());
+            }
+        } else {
+            taskGlobals.forEach((shared, own) ->
+                    copies.put(shared, own == globals ? taskRoot : ((GlobalEnvironment) own).copy()));
         }
-        if (value instanceof DoubleValue) {
-            return ((DoubleValue) value).value != 0;
+        interpreter worker = new interpreter(this, taskRoot);
+        worker.globals = taskRoot;
+        worker.taskGlobals = copies;
+        return worker;
+    }
+
+    private Value evaluateAwait(AwaitExpression expr) {
+        Value task = evaluate(expr.task);
+        if (!(task instanceof TaskValue)) {
+            throw new RuntimeError("Can only await a task, got " + task.getTypeName());
+        }
+        try {
+            return ((TaskValue) task).future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeError) throw (RuntimeError) cause;
+            throw new RuntimeError("Task failed: " + cause.getMessage());
         }
-        if (value instanceof StringValue) {
-            return !((StringValue) value).value.isEmpty();
+    }
+
+    private ChannelValue toChannel(Value value) {
+        if (value instanceof ChannelValue) {
+            return (ChannelValue) value;
         }
-        return value != VoidValue.INSTANCE;
+        throw new RuntimeError("Expected channel but got " + value.getTypeName());
+    }
+
+    // ===== METODY POMOCNICZE =====
+    private boolean isTruthy(Value value) {
+        return switch (value.kind) {
+            case Value.BOOL -> ((BoolValue) value).value;
+            case Value.INT -> ((IntValue) value).value != 0;
+            case Value.DOUBLE -> ((DoubleValue) value).value != 0;
+            case Value.INT128 -> !((Int128Value) value).isZero();
+            case Value.STRING -> !((StringValue) value).value.isEmpty();
+            case Value.VOID -> false;
+            default -> true;
+        };
     }
 
     private boolean isEqual(Value a, Value b) {
@@ -486,31 +2191,185 @@ class interpreter {
     }
 
     private double toDouble(Value value) {
+        return switch (value.kind) {
+            case Value.INT -> ((IntValue) value).value;
+            case Value.DOUBLE -> ((DoubleValue) value).value;
+            case Value.INT128 -> ((Int128Value) value).toDouble();
+            default -> throw new RuntimeError("Cannot convert to number: " + value.getTypeName());
+        };
+    }
+
+    private boolean isInteger(Value value) {
+        return value instanceof IntValue || value instanceof Int128Value;
+    }
+
+    private long toLong(Value value) {
         if (value instanceof IntValue) {
             return ((IntValue) value).value;
         }
-        if (value instanceof DoubleValue) {
-            return ((DoubleValue) value).value;
+        throw new RuntimeError("Expected integer but got " + value.getTypeName());
+    }
+
+    private Int128Value toInt128(Value value) {
+        if (value instanceof Int128Value) {
+            return (Int128Value) value;
+        }
+        return Int128Value.of(((IntValue) value).value);
+    }
+
+    // Dopasowanie wartości do zadeklarowanego typu (na razie tylko int128)
+    private Value coerce(Lexer.TokenType type, Value value) {
+        if (type == Lexer.TokenType.INT128 && value instanceof IntValue) {
+            return Int128Value.of(((IntValue) value).value);
         }
-        throw new RuntimeError("Cannot convert to number: " + value.getTypeName());
+        return value;
     }
 
     // ===== PUBLICZNE API =====
+    /**
+     * Wykonuje źródło. Po compileThreshold wykonaniach tego samego źródła jest ono kompilowane
+     * w tle do klasy Javy (HotScripts), a kolejne wykonania uruchamiają tę klasę z tym samym
+     * wyjściem; zmienne globalne i funkcje programu trafiają potem do interpretera jak po
+     * interpretacji. Klasa jest używana tylko na czystym interpreterze (po reset()) - program
+     * widzący wcześniejsze zmienne, funkcje lub moduły jest zawsze interpretowany. Skompilowany
+     * program ma własną memoizację, niewidoczną w getMemoStats(). Źródła, których klasa nie
+     * odtworzyłaby dokładnie, JavaTranspiler odrzuca i zostają interpretowane (HotScriptCheck)
+     */
     public void executeCode(String code) {
+        CompiledScript compiled = isPristine() ? HotScripts.SHARED.lookup(code, compileThreshold) : null;
+        if (compiled != null) {
+            runCompiled(compiled);
+            return;
+        }
         List<Token> tokens = Token.tokenize(code);
         Parser parser = new Parser(tokens);
         Program program = parser.parse();
         interpret(program);
     }
 
+    /**
+     * Wykonuje źródło pod debuggerem: zawsze interpretowane i bez memoizacji, żeby każde
+     * wywołanie przechodziło przez breakpointy. Wywoływane na wątku wykonania, który debugger
+     * wstrzymuje na breakpointach
+     */
+    public void debugCode(String code, Debugger debugger) {
+        Program program = new Parser(Token.tokenize(code)).parse();
+        debugger.attach(program);
+        MemoCache saved = memo;
+        memo = new MemoCache(0);
+        try {
+            interpret(program);
+        } finally {
+            memo = saved;
+            debugger.detach();
+        }
+    }
+
+    /**
+     * Wykonuje źródło z pomiarem pokrycia (interpretowane, bez optymalizacji AST - sondy
+     * potrzebują numerów linii); wynik zostaje w coverage także po błędzie wykonania
+     */
+    public void coverCode(String code, Coverage coverage) {
+        Program program = new Parser(Token.tokenize(code)).parse();
+        coverage.attach(program);
+        interpret(program);
+    }
+
+    // ===== SESJA REPL (save / load) =====
+    // Zwraca krótkie podsumowanie zapisu
+    public String saveSession(Path path) throws IOException {
+        return SessionSnapshot.save(path, globals, functions, modules.keySet(), this::isMemoized);
+    }
+
+    // Zastępuje zmienne i funkcje zawartością pliku; przy błędzie odczytu sesja zostaje bez zmian.
+    // Moduły są importowane ponownie, a zapisane funkcje sesji przesłaniają ich funkcje jak wcześniej
+    public String loadSession(Path path) throws IOException {
+        SessionSnapshot snapshot = SessionSnapshot.load(path);
+        for (Path module : snapshot.modules) {
+            try {
+                ModuleCache.SHARED.get(module);
+            } catch (RuntimeError e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        globals = snapshot.globals;
+        environment = globals;
+        functions = new FunctionTable();
+        memo.clear();
+        modules = new ConcurrentHashMap<>();
+        for (Path module : snapshot.modules) {
+            importModule(module.toString());
+        }
+        for (Function function : snapshot.functions.values()) {
+            functions.put(function.symbol, function);
+        }
+        return snapshot.summary;
+    }
+
+    private boolean isPristine() {
+        return globals.slotCount() == 0 && functions.values().isEmpty() && modules.isEmpty();
+    }
+
+    private void runCompiled(CompiledScript script) {
+        for (FunctionDeclaration declaration : script.functions()) {
+            functions.put(declaration.symbol, new Function(declaration, globals));
+        }
+        try {
+            script.run(output::print, output::flush,
+                    (name, value) -> globals.define(Symbols.intern(name), compiledValue(value)));
+        } catch (RuntimeException e) {
+            output.flush();
+            System.err.println("Runtime Error: " + e.getMessage());
+            throw new RuntimeError(e.getMessage());
+        } finally {
+            output.flush();
+        }
+    }
+
+    // Wartość pola skompilowanej klasy (typy z JavaTranspiler.Type)
+    private static Value compiledValue(Object value) {
+        if (value instanceof Long l) return new IntValue(l);
+        if (value instanceof Double d) return new DoubleValue(d);
+        if (value instanceof Boolean b) return BoolValue.of(b);
+        return new StringValue((String) value);
+    }
+
+    /**
+     * Liczba wykonań tego samego źródła w executeCode, po której jest ono kompilowane (0 wyłącza)
+     */
+    public void setCompileThreshold(int runs) {
+        this.compileThreshold = runs;
+    }
+
+    public void setOutput(OutputSink output) {
+        this.output.flush();
+        this.output = output;
+    }
+
+    public void flushOutput() {
+        output.flush();
+    }
+
+    /**
+     * Limit pamięci cache memoizacji w bajtach; 0 wyłącza zapamiętywanie
+     */
+    public void setMemoLimit(long bytes) {
+        memo.setLimit(bytes);
+    }
+
+    public String getMemoStats() {
+        return memo.stats();
+    }
+
     public Environment getGlobalEnvironment() {
         return globals;
     }
 
     public void reset() {
-        globals = new Environment();
+        globals = new GlobalEnvironment();
         environment = globals;
         functions.clear();
-        registerBuiltins();
+        memo.clear();
+        modules = new ConcurrentHashMap<>();
     }
 }
\ No newline at end of file
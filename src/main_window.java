@@ -2,8 +2,12 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -16,6 +20,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.time.Duration;
 import java.util.*;
+import java.util.function.IntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +35,7 @@ public class main_window extends Application {
     private static final String TEXT_PRIMARY = "#e0e0e0";
     private static final String TEXT_SECONDARY = "#9d9d9d";
     private static final String BORDER_COLOR = "#3e3e42";
+    private static final String COVERAGE_HIT = "#3c9a5f";
 
     private CodeArea codeEditor;
     private TextArea consoleOutput;
@@ -39,6 +45,14 @@ public class main_window extends Application {
     private interpreter interpreter;
     private File currentFile;
 
+    // Debugger: linie z breakpointami (od 1), bieżąca sesja albo null, podgląd zmiennych
+    private final Set<Integer> breakpoints = new HashSet<>();
+    private Debugger debugger;
+    private TreeView<String> variablesView;
+    private IntFunction<Node> lineNumbers;
+    // Wynik ostatniego uruchomienia z pokryciem (paski przy numerach linii) albo null
+    private Coverage coverage;
+
     @Override
     public void start(Stage primaryStage) {
         interpreter = new interpreter();
@@ -156,10 +170,30 @@ public class main_window extends Application {
         MenuItem stopCode = new MenuItem("Stop");
         stopCode.setOnAction(e -> stopCode());
 
+        MenuItem coverCode = new MenuItem("Run with Coverage");
+        coverCode.setOnAction(e -> coverCode());
+
         MenuItem clearConsole = new MenuItem("Clear Console");
         clearConsole.setOnAction(e -> clearConsole());
 
-        runMenu.getItems().addAll(runCode, stopCode, new SeparatorMenuItem(), clearConsole);
+        MenuItem debugCode = new MenuItem("Debug");
+        debugCode.setAccelerator(new KeyCodeCombination(KeyCode.F6));
+        debugCode.setOnAction(e -> debugCode());
+
+        MenuItem continueCode = new MenuItem("Continue");
+        continueCode.setAccelerator(new KeyCodeCombination(KeyCode.F8));
+        continueCode.setOnAction(e -> continueCode());
+
+        MenuItem stepCode = new MenuItem("Step");
+        stepCode.setAccelerator(new KeyCodeCombination(KeyCode.F10));
+        stepCode.setOnAction(e -> stepCode());
+
+        MenuItem toggleBreakpoint = new MenuItem("Toggle Breakpoint");
+        toggleBreakpoint.setAccelerator(new KeyCodeCombination(KeyCode.F9));
+        toggleBreakpoint.setOnAction(e -> toggleBreakpoint(codeEditor.getCurrentParagraph() + 1));
+
+        runMenu.getItems().addAll(runCode, coverCode, stopCode, new SeparatorMenuItem(),
+                debugCode, continueCode, stepCode, toggleBreakpoint, new SeparatorMenuItem(), clearConsole);
 
         Menu helpMenu = new Menu("Help");
         MenuItem about = new MenuItem("About");
@@ -202,12 +236,22 @@ public class main_window extends Application {
         Button stopBtn = createToolButton("⏹", "Stop");
         stopBtn.setOnAction(e -> stopCode());
 
+        Button debugBtn = createToolButton("🐞", "Debug (F6)");
+        debugBtn.setOnAction(e -> debugCode());
+
+        Button continueBtn = createToolButton("⏵", "Continue (F8)");
+        continueBtn.setOnAction(e -> continueCode());
+
+        Button stepBtn = createToolButton("↷", "Step (F10)");
+        stepBtn.setOnAction(e -> stepCode());
+
         Separator sep2 = new Separator(Orientation.VERTICAL);
 
         Button clearBtn = createToolButton("🗑", "Clear Console");
         clearBtn.setOnAction(e -> clearConsole());
 
-        toolBar.getItems().addAll(newBtn, openBtn, saveBtn, sep1, runBtn, stopBtn, sep2, clearBtn);
+        toolBar.getItems().addAll(newBtn, openBtn, saveBtn, sep1, runBtn, stopBtn,
+                debugBtn, continueBtn, stepBtn, sep2, clearBtn);
 
         return toolBar;
     }
@@ -269,7 +313,8 @@ public class main_window extends Application {
         mainTab.setClosable(false);
 
         codeEditor = new CodeArea();
-        codeEditor.setParagraphGraphicFactory(LineNumberFactory.get(codeEditor));
+        lineNumbers = LineNumberFactory.get(codeEditor);
+        codeEditor.setParagraphGraphicFactory(this::lineGraphic);
         codeEditor.setStyle("-fx-background-color: " + BG_DARK + "; " +
                 "-fx-control-inner-background: " + BG_DARK + "; " +
                 "-fx-text-fill: " + TEXT_PRIMARY + "; " +
@@ -307,13 +352,52 @@ public class main_window extends Application {
         consoleOutput.setText("Console ready...\n");
 
         VBox.setVgrow(consoleOutput, Priority.ALWAYS);
-        panel.getChildren().addAll(consoleTitle, consoleOutput);
+        VBox consoleBox = new VBox(5, consoleTitle, consoleOutput);
+
+        Label variablesTitle = new Label("🔍 Variables");
+        variablesTitle.setStyle("-fx-text-fill: " + TEXT_PRIMARY + "; -fx-font-size: 14px; -fx-font-weight: bold;");
+
+        variablesView = new TreeView<>();
+        variablesView.setShowRoot(false);
+        variablesView.setStyle("-fx-background-color: " + BG_DARKER + "; " +
+                "-fx-text-fill: " + TEXT_PRIMARY + "; " +
+                "-fx-border-color: " + BORDER_COLOR + ";");
+
+        VBox.setVgrow(variablesView, Priority.ALWAYS);
+        VBox variablesBox = new VBox(5, variablesTitle, variablesView);
+
+        SplitPane split = new SplitPane(consoleBox, variablesBox);
+        split.setOrientation(Orientation.HORIZONTAL);
+        split.setDividerPositions(0.7);
+
+        VBox.setVgrow(split, Priority.ALWAYS);
+        panel.getChildren().add(split);
 
         return panel;
     }
 
+    // Numer linii poprzedzony znacznikiem breakpointu i paskiem pokrycia (zielony - wykonana,
+    // czerwony - niewykonana); kliknięcie przełącza breakpoint
+    private Node lineGraphic(int paragraph) {
+        int line = paragraph + 1;
+        Label marker = new Label(breakpoints.contains(line) ? "●" : " ");
+        marker.setMinWidth(14);
+        marker.setStyle("-fx-text-fill: " + ACCENT_RED + "; -fx-font-size: 12px;");
+
+        Region strip = new Region();
+        strip.setMinWidth(3);
+        if (coverage != null && coverage.hasCode(line)) {
+            strip.setStyle("-fx-background-color: " + (coverage.isHit(line) ? COVERAGE_HIT : ACCENT_RED_DARK) + ";");
+        }
+
+        HBox graphic = new HBox(marker, strip, lineNumbers.apply(paragraph));
+        graphic.setAlignment(Pos.CENTER_LEFT);
+        graphic.setOnMouseClicked(e -> toggleBreakpoint(line));
+        return graphic;
+    }
+
     private static final String[] KEYWORDS = new String[] {
-            "if", "else", "elseif", "while", "for", "return", "class", "fn",
+            "if", "else", "elseif", "while", "for", "parallel", "reduce", "spawn", "await", "return", "class", "fn", "cached", "import",
             "int32", "int64", "int128", "long", "double", "float", "string", "bool", "void",
             "true", "false"
     };
@@ -412,7 +496,10 @@ public class main_window extends Application {
         }
     }
 
+    // Podczas sesji debuggera jej wątek wykonuje program na tym samym interpreterze
     private void runCode() {
+        if (debuggerActive()) return;
+        showCoverage(null);
         consoleOutput.clear();
         consoleOutput.appendText("=== Running Code ===\n\n");
         updateStatus("Running...");
@@ -425,7 +512,7 @@ public class main_window extends Application {
 
         try {
             String code = codeEditor.getText();
-            interpreter.reset();
+            resetInterpreter();
             interpreter.executeCode(code);
             consoleOutput.appendText("\n=== Execution completed successfully ===\n");
             updateStatus("Execution completed");
@@ -438,7 +525,160 @@ public class main_window extends Application {
         }
     }
 
+    // Importy skryptu są rozwiązywane względem katalogu otwartego pliku
+    private void resetInterpreter() {
+        interpreter.reset();
+        if (currentFile != null) {
+            interpreter.setModuleBase(currentFile.getAbsoluteFile().getParentFile().toPath());
+        }
+    }
+
+    // ===== POKRYCIE =====
+    // Jak runCode, ale z leniwą instrumentacją pokrycia; linie zostają podświetlone do następnego uruchomienia
+    private void coverCode() {
+        if (debuggerActive()) return;
+        showCoverage(null);
+        consoleOutput.clear();
+        consoleOutput.appendText("=== Running Code with Coverage ===\n\n");
+        updateStatus("Running with coverage...");
+
+        PrintStream ps = new PrintStream(new ConsoleOutputStream());
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        System.setOut(ps);
+        System.setErr(ps);
+
+        Coverage session = new Coverage(currentFile != null ? currentFile.getName() : "untitled");
+        try {
+            String code = codeEditor.getText();
+            resetInterpreter();
+            interpreter.coverCode(code, session);
+            consoleOutput.appendText("\n=== Execution completed successfully ===\n");
+        } catch (Exception e) {
+            consoleOutput.appendText("\n[ERROR] " + e.getMessage() + "\n");
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        consoleOutput.appendText("Coverage: " + session.summary() + "\n");
+        updateStatus("Coverage: " + session.summary());
+        showCoverage(session);
+    }
+
+    private void showCoverage(Coverage session) {
+        if (coverage == null && session == null) return;
+        coverage = session;
+        codeEditor.setParagraphGraphicFactory(this::lineGraphic);
+    }
+
+    // ===== DEBUGGER =====
+    // Program działa na osobnym wątku, więc edytor reaguje także podczas wstrzymania
+    private void debugCode() {
+        if (debugger != null) {
+            updateStatus("Debugger is already running");
+            return;
+        }
+        showCoverage(null);
+        consoleOutput.clear();
+        consoleOutput.appendText("=== Debugging Code ===\n\n");
+        updateStatus("Debugging...");
+
+        PrintStream ps = new PrintStream(new ConsoleOutputStream());
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        System.setOut(ps);
+        System.setErr(ps);
+
+        Debugger session = new Debugger(frame -> {
+            // Wątek wykonania: wypisane dotąd wyjście ma być widoczne przed wstrzymaniem
+            interpreter.flushOutput();
+            Platform.runLater(() -> showPausedFrame(frame));
+        });
+        for (int line : breakpoints) {
+            session.setBreakpoint(line, true);
+        }
+        debugger = session;
+
+        String code = codeEditor.getText();
+        resetInterpreter();
+        Thread thread = new Thread(() -> {
+            String result;
+            try {
+                interpreter.debugCode(code, session);
+                result = "\n=== Execution completed successfully ===\n";
+            } catch (Debugger.Stopped e) {
+                result = "\n=== Execution stopped ===\n";
+            } catch (Exception e) {
+                result = "\n[ERROR] " + e.getMessage() + "\n";
+            }
+            String message = result;
+            Platform.runLater(() -> {
+                System.setOut(oldOut);
+                System.setErr(oldErr);
+                consoleOutput.appendText(message);
+                variablesView.setRoot(null);
+                debugger = null;
+                updateStatus("Debugging finished");
+            });
+        }, "debugger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private boolean debuggerActive() {
+        if (debugger == null) return false;
+        updateStatus("Debugger is running - stop it first");
+        return true;
+    }
+
+    private void continueCode() {
+        if (debugger != null && debugger.isPaused()) {
+            debugger.resume();
+            updateStatus("Debugging...");
+        }
+    }
+
+    private void stepCode() {
+        if (debugger != null && debugger.isPaused()) {
+            debugger.step();
+            updateStatus("Stepping...");
+        }
+    }
+
+    private void toggleBreakpoint(int line) {
+        boolean enabled = breakpoints.add(line);
+        if (!enabled) breakpoints.remove(line);
+        if (debugger != null) debugger.setBreakpoint(line, enabled);
+        // Nowa fabryka wymusza odświeżenie znaczników przy numerach linii
+        codeEditor.setParagraphGraphicFactory(this::lineGraphic);
+    }
+
+    private void showPausedFrame(Debugger.Frame frame) {
+        updateStatus("Paused at line " + frame.line);
+        int paragraph = Math.min(frame.line - 1, codeEditor.getParagraphs().size() - 1);
+        codeEditor.moveTo(paragraph, 0);
+        codeEditor.selectLine();
+        codeEditor.requestFollowCaret();
+
+        TreeItem<String> root = new TreeItem<>("Scopes");
+        int count = frame.scopes.size();
+        for (int i = 0; i < count; i++) {
+            String title = i == count - 1 ? "Global" : i == 0 ? "Local" : "Enclosing " + i;
+            TreeItem<String> scope = new TreeItem<>(title);
+            frame.scopes.get(i).forEach((name, value) -> scope.getChildren().add(new TreeItem<>(name + " = " + value)));
+            scope.setExpanded(true);
+            root.getChildren().add(scope);
+        }
+        variablesView.setRoot(root);
+    }
+
     private void stopCode() {
+        if (debugger != null) {
+            // Wątek debuggera kończy się przy najbliższej instrukcji i sam wypisze komunikat
+            debugger.stop();
+            updateStatus("Stopping...");
+            return;
+        }
         updateStatus("Stopped");
         consoleOutput.appendText("\n=== Execution stopped ===\n");
     }